@@ -1,11 +1,14 @@
 package com.example.filesecbox.controller;
 
 import com.example.filesecbox.model.*;
+import com.example.filesecbox.service.ChunkedUploadService;
+import com.example.filesecbox.service.ExecutionJobService;
 import com.example.filesecbox.service.SandboxService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/v1")
@@ -15,6 +18,15 @@ public class SandboxController {
     @Autowired
     private SandboxService sandboxService;
 
+    @Autowired
+    private ExecutionJobService executionJobService;
+
+    @Autowired
+    private FileResponseWriter fileResponseWriter;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
     // --- 1. 技能管理 ---
 
     @PostMapping("/skills/{userId}/{agentId}/upload")
@@ -136,6 +148,79 @@ public class SandboxController {
         }
     }
 
+    @PostMapping("/files/{userId}/{agentId}/uploads")
+    public ResponseEntity<ApiResponse<?>> initiateUpload(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestParam("path") String path,
+            @RequestParam("size") long size) {
+        log.info("API CALL: initiateUpload, userId: {}, agentId: {}, path: {}, size: {}", userId, agentId, path, size);
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chunkedUploadService.initiate(userId, agentId, path, size)));
+        } catch (Exception e) {
+            log.error("API ERROR: initiateUpload", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @PutMapping(value = "/files/{userId}/{agentId}/uploads/{uploadId}", consumes = "application/octet-stream")
+    public ResponseEntity<ApiResponse<?>> uploadPart(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            javax.servlet.http.HttpServletRequest request) {
+        log.info("API CALL: uploadPart, userId: {}, agentId: {}, uploadId: {}, offset: {}, length: {}", userId, agentId, uploadId, offset, request.getContentLengthLong());
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chunkedUploadService.writePart(userId, agentId, uploadId, offset, request.getContentLengthLong(), request.getInputStream())));
+        } catch (Exception e) {
+            log.error("API ERROR: uploadPart", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/files/{userId}/{agentId}/uploads/{uploadId}")
+    public ResponseEntity<ApiResponse<?>> getUpload(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String uploadId) {
+        log.info("API CALL: getUpload, userId: {}, agentId: {}, uploadId: {}", userId, agentId, uploadId);
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chunkedUploadService.status(userId, agentId, uploadId)));
+        } catch (Exception e) {
+            log.error("API ERROR: getUpload", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @PostMapping("/files/{userId}/{agentId}/uploads/{uploadId}/commit")
+    public ResponseEntity<ApiResponse<?>> commitUpload(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String uploadId) {
+        log.info("API CALL: commitUpload, userId: {}, agentId: {}, uploadId: {}", userId, agentId, uploadId);
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chunkedUploadService.commit(userId, agentId, uploadId)));
+        } catch (Exception e) {
+            log.error("API ERROR: commitUpload", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/files/{userId}/{agentId}/uploads/{uploadId}")
+    public ResponseEntity<ApiResponse<?>> abortUpload(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String uploadId) {
+        log.info("API CALL: abortUpload, userId: {}, agentId: {}, uploadId: {}", userId, agentId, uploadId);
+        try {
+            return ResponseEntity.ok(ApiResponse.success(chunkedUploadService.abort(userId, agentId, uploadId)));
+        } catch (Exception e) {
+            log.error("API ERROR: abortUpload", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @GetMapping("/{userId}/{agentId}/files")
     public ResponseEntity<ApiResponse<?>> listFiles(
             @PathVariable String userId,
@@ -150,6 +235,24 @@ public class SandboxController {
         }
     }
 
+    @GetMapping("/{userId}/{agentId}/files/page")
+    public ResponseEntity<ApiResponse<?>> listFilesPage(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestParam("path") String path,
+            @RequestParam(value = "glob", required = false) String glob,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        log.info("API CALL: listFilesPage, userId: {}, agentId: {}, path: {}, glob: {}, limit: {}", userId, agentId, path, glob, limit);
+        try {
+            int pageSize = Math.max(1, Math.min(limit, 10000));
+            return ResponseEntity.ok(ApiResponse.success(sandboxService.listFiles(userId, agentId, path, glob, cursor, pageSize)));
+        } catch (Exception e) {
+            log.error("API ERROR: listFilesPage", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @GetMapping("/{userId}/{agentId}/content")
     public ResponseEntity<ApiResponse<?>> getContent(
             @PathVariable String userId,
@@ -166,6 +269,66 @@ public class SandboxController {
         }
     }
 
+    @GetMapping("/{userId}/{agentId}/search")
+    public ResponseEntity<ApiResponse<?>> search(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "regex", defaultValue = "false") boolean regex,
+            @RequestParam(value = "ignore_case", defaultValue = "false") boolean ignoreCase,
+            @RequestParam(value = "path", required = false) String path,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("API CALL: search, userId: {}, agentId: {}, q: {}, regex: {}, path: {}, limit: {}", userId, agentId, query, regex, path, limit);
+        try {
+            int pageSize = Math.max(1, Math.min(limit, 1000));
+            return ResponseEntity.ok(ApiResponse.success(sandboxService.search(userId, agentId, query, regex, ignoreCase, path, cursor, pageSize)));
+        } catch (Exception e) {
+            log.error("API ERROR: search", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{userId}/{agentId}/content/raw")
+    public void readRaw(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestParam("path") String path,
+            javax.servlet.http.HttpServletRequest request,
+            javax.servlet.http.HttpServletResponse response) {
+        log.info("API CALL: readRaw, userId: {}, agentId: {}, path: {}, range: {}", userId, agentId, path, request.getHeader("Range"));
+        try {
+            fileResponseWriter.write(sandboxService.resolveReadableFile(userId, agentId, path), request, response, "application/octet-stream");
+        } catch (Exception e) {
+            log.error("API ERROR: readRaw", e);
+            try {
+                response.sendError(500, e.getMessage());
+            } catch (Exception ignored) {}
+        }
+    }
+
+    @GetMapping("/{userId}/{agentId}/download")
+    public void downloadFile(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestParam("path") String path,
+            javax.servlet.http.HttpServletRequest request,
+            javax.servlet.http.HttpServletResponse response) {
+        log.info("API CALL: downloadFile, userId: {}, agentId: {}, path: {}, range: {}", userId, agentId, path, request.getHeader("Range"));
+        try {
+            java.nio.file.Path file = sandboxService.resolveReadableFile(userId, agentId, path);
+            String contentType = java.nio.file.Files.probeContentType(file);
+            String encodedFileName = java.net.URLEncoder.encode(file.getFileName().toString(), "UTF-8").replaceAll("\\+", "%20");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + encodedFileName + "\"; filename*=UTF-8''" + encodedFileName);
+            fileResponseWriter.write(file, request, response, contentType != null ? contentType : "application/octet-stream");
+        } catch (Exception e) {
+            log.error("API ERROR: downloadFile", e);
+            try {
+                response.sendError(500, e.getMessage());
+            } catch (Exception ignored) {}
+        }
+    }
+
     @PostMapping("/{userId}/{agentId}/write")
     public ResponseEntity<ApiResponse<?>> write(
             @PathVariable String userId,
@@ -192,6 +355,19 @@ public class SandboxController {
         }
     }
 
+    @PostMapping("/{userId}/{agentId}/edit/batch")
+    public ResponseEntity<ApiResponse<?>> editBatch(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestBody java.util.List<EditRequest> requests) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(sandboxService.edit(userId, agentId, requests)));
+        } catch (Exception e) {
+            log.error("API ERROR: editBatch", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @PostMapping("/{userId}/{agentId}/execute")
     public ResponseEntity<ApiResponse<?>> execute(
             @PathVariable String userId,
@@ -206,6 +382,74 @@ public class SandboxController {
         }
     }
 
+    @GetMapping("/{userId}/{agentId}/execute/logs/{logId}")
+    public void downloadExecutionLog(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String logId,
+            @RequestParam(value = "stream", defaultValue = "stdout") String stream,
+            javax.servlet.http.HttpServletResponse response) {
+        log.info("API CALL: downloadExecutionLog, userId: {}, agentId: {}, logId: {}, stream: {}", userId, agentId, logId, stream);
+        try {
+            response.setContentType("text/plain;charset=UTF-8");
+            sandboxService.downloadExecutionLog(userId, agentId, logId, stream, response.getOutputStream());
+        } catch (Exception e) {
+            log.error("API ERROR: downloadExecutionLog", e);
+            try {
+                response.sendError(500, e.getMessage());
+            } catch (Exception ignored) {}
+        }
+    }
+
+    @PostMapping("/{userId}/{agentId}/execute/async")
+    public ResponseEntity<ApiResponse<?>> submitExecution(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @RequestBody CommandRequest request) {
+        log.info("API CALL: submitExecution, userId: {}, agentId: {}", userId, agentId);
+        try {
+            return ResponseEntity.ok(ApiResponse.success(executionJobService.submit(userId, agentId, request)));
+        } catch (Exception e) {
+            log.error("API ERROR: submitExecution", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{userId}/{agentId}/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<?>> getJob(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(executionJobService.getJob(userId, agentId, jobId)));
+        } catch (Exception e) {
+            log.error("API ERROR: getJob", e);
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping(value = "/{userId}/{agentId}/jobs/{jobId}/stream", produces = "text/event-stream")
+    public SseEmitter streamJob(
+            @PathVariable String userId,
+            @PathVariable String agentId,
+            @PathVariable String jobId) {
+        log.info("API CALL: streamJob, userId: {}, agentId: {}, jobId: {}", userId, agentId, jobId);
+        try {
+            return executionJobService.stream(userId, agentId, jobId);
+        } catch (Exception e) {
+            log.error("API ERROR: streamJob", e);
+            // 响应已协商为 text/event-stream，错误以 error 事件 (ApiResponse 结构) 返回后关闭连接
+            SseEmitter emitter = new SseEmitter(0L);
+            try {
+                emitter.send(SseEmitter.event().name("error").data(ApiResponse.error(e.getMessage())));
+                emitter.complete();
+            } catch (Exception sendError) {
+                emitter.completeWithError(sendError);
+            }
+            return emitter;
+        }
+    }
+
     @DeleteMapping("/{userId}/{agentId}/delete")
     public ResponseEntity<ApiResponse<?>> deleteFile(
             @PathVariable String userId,
@@ -0,0 +1,39 @@
+package com.example.filesecbox.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExecutionJob {
+    @JsonProperty("job_id")
+    private String jobId;
+    private String command;
+    private String status; // QUEUED, RUNNING, SUCCEEDED, FAILED
+    @JsonProperty("submitted_at")
+    private String submittedAt;
+    @JsonProperty("started_at")
+    private String startedAt;
+    @JsonProperty("finished_at")
+    private String finishedAt;
+    private ExecutionResult result;
+    private String error;
+
+    public ExecutionJob() {}
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getCommand() { return command; }
+    public void setCommand(String command) { this.command = command; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getSubmittedAt() { return submittedAt; }
+    public void setSubmittedAt(String submittedAt) { this.submittedAt = submittedAt; }
+    public String getStartedAt() { return startedAt; }
+    public void setStartedAt(String startedAt) { this.startedAt = startedAt; }
+    public String getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(String finishedAt) { this.finishedAt = finishedAt; }
+    public ExecutionResult getResult() { return result; }
+    public void setResult(ExecutionResult result) { this.result = result; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
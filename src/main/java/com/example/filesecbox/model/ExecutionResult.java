@@ -1,5 +1,6 @@
 package com.example.filesecbox.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class ExecutionResult {
@@ -9,6 +10,14 @@ public class ExecutionResult {
     @JsonProperty("exit_code")
     private int exitCode;
 
+    // 输出超出内存上限时为 true，完整输出可通过 logId 获取
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean truncated;
+
+    @JsonProperty("log_id")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String logId;
+
     public ExecutionResult() {}
 
     public ExecutionResult(String stdout, String stderror, int exitCode) {
@@ -23,4 +32,8 @@ public class ExecutionResult {
     public void setStderror(String stderror) { this.stderror = stderror; }
     public int getExitCode() { return exitCode; }
     public void setExitCode(int exitCode) { this.exitCode = exitCode; }
+    public boolean isTruncated() { return truncated; }
+    public void setTruncated(boolean truncated) { this.truncated = truncated; }
+    public String getLogId() { return logId; }
+    public void setLogId(String logId) { this.logId = logId; }
 }
@@ -1,13 +1,21 @@
 package com.example.filesecbox.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public class FileContentResult {
     private String content;
+    // 仅分页读取时返回；整文件读取只返回 content
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<String> lines;
 
     public FileContentResult() {}
 
+    public FileContentResult(String content) {
+        this.content = content;
+    }
+
     public FileContentResult(String content, List<String> lines) {
         this.content = content;
         this.lines = lines;
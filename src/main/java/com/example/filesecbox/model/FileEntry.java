@@ -0,0 +1,25 @@
+package com.example.filesecbox.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class FileEntry {
+    private String path;
+    private long size;
+    @JsonProperty("last_modified")
+    private String lastModified;
+
+    public FileEntry() {}
+
+    public FileEntry(String path, long size, String lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public String getLastModified() { return lastModified; }
+    public void setLastModified(String lastModified) { this.lastModified = lastModified; }
+}
@@ -0,0 +1,25 @@
+package com.example.filesecbox.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileListPage {
+    private List<FileEntry> items;
+    @JsonProperty("next_cursor")
+    private String nextCursor; // 为空表示已到最后一页
+
+    public FileListPage() {}
+
+    public FileListPage(List<FileEntry> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FileEntry> getItems() { return items; }
+    public void setItems(List<FileEntry> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
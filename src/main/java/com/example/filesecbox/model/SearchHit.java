@@ -0,0 +1,22 @@
+package com.example.filesecbox.model;
+
+public class SearchHit {
+    private String path;
+    private int line; // 行号，从 1 开始
+    private String text;
+
+    public SearchHit() {}
+
+    public SearchHit(String path, int line, String text) {
+        this.path = path;
+        this.line = line;
+        this.text = text;
+    }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public int getLine() { return line; }
+    public void setLine(int line) { this.line = line; }
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+}
@@ -0,0 +1,30 @@
+package com.example.filesecbox.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchResult {
+    private List<SearchHit> hits;
+    @JsonProperty("files_scanned")
+    private int filesScanned; // 经索引筛选后实际逐行匹配的文件数
+    @JsonProperty("next_cursor")
+    private String nextCursor; // 为空表示没有更多结果
+
+    public SearchResult() {}
+
+    public SearchResult(List<SearchHit> hits, int filesScanned, String nextCursor) {
+        this.hits = hits;
+        this.filesScanned = filesScanned;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<SearchHit> getHits() { return hits; }
+    public void setHits(List<SearchHit> hits) { this.hits = hits; }
+    public int getFilesScanned() { return filesScanned; }
+    public void setFilesScanned(int filesScanned) { this.filesScanned = filesScanned; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,50 @@
+package com.example.filesecbox.model;
+
+/**
+ * 增量同步报告：记录一次目录同步中新增、替换、删除、跳过的文件数及搬运的字节数。
+ */
+public class SyncReport {
+    private int filesAdded;
+    private int filesReplaced;
+    private int filesDeleted;
+    private int filesUnchanged;
+    private long bytesMoved;
+    private long elapsedMillis;
+
+    public SyncReport() {}
+
+    public void recordAdded(long bytes) { filesAdded++; bytesMoved += bytes; }
+    public void recordReplaced(long bytes) { filesReplaced++; bytesMoved += bytes; }
+    public void recordDeleted() { filesDeleted++; }
+    public void recordUnchanged() { filesUnchanged++; }
+
+    public void merge(SyncReport other) {
+        filesAdded += other.filesAdded;
+        filesReplaced += other.filesReplaced;
+        filesDeleted += other.filesDeleted;
+        filesUnchanged += other.filesUnchanged;
+        bytesMoved += other.bytesMoved;
+        elapsedMillis += other.elapsedMillis;
+    }
+
+    public int getFilesTouched() { return filesAdded + filesReplaced + filesDeleted; }
+
+    public int getFilesAdded() { return filesAdded; }
+    public void setFilesAdded(int filesAdded) { this.filesAdded = filesAdded; }
+    public int getFilesReplaced() { return filesReplaced; }
+    public void setFilesReplaced(int filesReplaced) { this.filesReplaced = filesReplaced; }
+    public int getFilesDeleted() { return filesDeleted; }
+    public void setFilesDeleted(int filesDeleted) { this.filesDeleted = filesDeleted; }
+    public int getFilesUnchanged() { return filesUnchanged; }
+    public void setFilesUnchanged(int filesUnchanged) { this.filesUnchanged = filesUnchanged; }
+    public long getBytesMoved() { return bytesMoved; }
+    public void setBytesMoved(long bytesMoved) { this.bytesMoved = bytesMoved; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("added=%d, replaced=%d, deleted=%d, unchanged=%d, bytes=%d, elapsed=%dms",
+                filesAdded, filesReplaced, filesDeleted, filesUnchanged, bytesMoved, elapsedMillis);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.filesecbox.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UploadSession {
+    @JsonProperty("upload_id")
+    private String uploadId;
+    private String path;
+    private long size;
+    @JsonProperty("received_bytes")
+    private long receivedBytes;
+    @JsonProperty("missing_ranges")
+    private List<String> missingRanges; // 尚未收到的字节区间，形如 "0-1048575" (含两端)
+    private boolean complete;
+
+    public UploadSession() {}
+
+    public String getUploadId() { return uploadId; }
+    public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getReceivedBytes() { return receivedBytes; }
+    public void setReceivedBytes(long receivedBytes) { this.receivedBytes = receivedBytes; }
+    public List<String> getMissingRanges() { return missingRanges; }
+    public void setMissingRanges(List<String> missingRanges) { this.missingRanges = missingRanges; }
+    public boolean isComplete() { return complete; }
+    public void setComplete(boolean complete) { this.complete = complete; }
+}
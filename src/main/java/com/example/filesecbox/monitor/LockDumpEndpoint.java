@@ -0,0 +1,24 @@
+package com.example.filesecbox.monitor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 锁诊断端点：GET /actuator/locks 列出当前持有（含调用栈）与等待中的锁。
+ */
+@Component
+@Endpoint(id = "locks")
+public class LockDumpEndpoint {
+
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    @ReadOperation
+    public Map<String, Object> locks() {
+        return lockMetrics.dump();
+    }
+}
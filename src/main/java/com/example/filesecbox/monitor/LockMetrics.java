@@ -0,0 +1,179 @@
+package com.example.filesecbox.monitor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 锁竞争指标与持有者诊断：记录每类操作的等待 / 持有耗时、超时次数与全局排队长度，
+ * 并保留当前持有与等待中的锁，供 /actuator/locks 导出（含持有线程的调用栈与各 agent 的排队长度）。
+ * 指标只按操作与模式打标签，不带 agentId，避免 agent 数量无界时 meter 随之膨胀。
+ */
+@Component
+public class LockMetrics {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LockMetrics.class);
+
+    private final MeterRegistry registry;
+    private final Map<Long, LockRecord> held = new ConcurrentHashMap<>();
+    private final Map<Long, LockRecord> waiting = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @Value("${app.lock.slow-hold-ms:2000}")
+    private long slowHoldMillis;
+
+    public LockMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("filesecbox.lock.held", held, Map::size)
+                .description("Locks currently held").register(registry);
+        Gauge.builder("filesecbox.lock.waiting", waiting, Map::size)
+                .description("Lock requests currently waiting").register(registry);
+    }
+
+    /**
+     * 开始等待锁，返回记录 id；随后必须调用 {@link #acquired} 或 {@link #timedOut}。
+     */
+    public long waitStarted(String agentId, String target, String operation, String mode) {
+        long id = ids.incrementAndGet();
+        waiting.put(id, new LockRecord(agentId, target, operation, mode, Thread.currentThread()));
+        return id;
+    }
+
+    public void acquired(long id) {
+        LockRecord record = waiting.remove(id);
+        if (record == null) return;
+        waitTimer(record).record(System.nanoTime() - record.sinceNanos, TimeUnit.NANOSECONDS);
+        held.put(id, record.restart());
+    }
+
+    public void timedOut(long id) {
+        LockRecord record = waiting.remove(id);
+        if (record == null) return;
+        waitTimer(record).record(System.nanoTime() - record.sinceNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("filesecbox.lock.timeouts")
+                .description("Lock acquisitions that timed out")
+                .tag("operation", record.operation).tag("mode", record.mode)
+                .register(registry).increment();
+        log.warn("Lock timeout: operation={}, target={}, mode={}, current holders: {}",
+                record.operation, record.target, record.mode, describeHolders(record.agentId));
+    }
+
+    public void cancelled(long id) {
+        waiting.remove(id);
+    }
+
+    public void released(long id) {
+        LockRecord record = held.remove(id);
+        if (record == null) return;
+        long heldNanos = System.nanoTime() - record.sinceNanos;
+        Timer.builder("filesecbox.lock.hold")
+                .description("Time a lock was held")
+                .tag("operation", record.operation).tag("mode", record.mode)
+                .publishPercentileHistogram()
+                .register(registry).record(heldNanos, TimeUnit.NANOSECONDS);
+        long heldMillis = TimeUnit.NANOSECONDS.toMillis(heldNanos);
+        if (heldMillis >= slowHoldMillis) {
+            log.warn("Slow lock holder: operation={}, target={}, mode={}, held {} ms on thread {}",
+                    record.operation, record.target, record.mode, heldMillis, record.thread.getName());
+        }
+    }
+
+    /**
+     * 当前持有与等待中的锁快照；持有者附带其线程调用栈。
+     */
+    public Map<String, Object> dump() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> holders = new ArrayList<>();
+        for (LockRecord record : sortedByAge(held.values())) {
+            Map<String, Object> entry = record.describe();
+            List<String> stack = new ArrayList<>();
+            for (StackTraceElement element : record.thread.getStackTrace()) {
+                stack.add(element.toString());
+            }
+            entry.put("stackTrace", stack);
+            holders.add(entry);
+        }
+        List<Map<String, Object>> waiters = new ArrayList<>();
+        for (LockRecord record : sortedByAge(waiting.values())) {
+            waiters.add(record.describe());
+        }
+        Map<String, Integer> queues = new TreeMap<>();
+        for (LockRecord record : waiting.values()) {
+            queues.merge(record.agentId, 1, Integer::sum);
+        }
+        result.put("held", holders);
+        result.put("waiting", waiters);
+        result.put("queueByAgent", queues);
+        return result;
+    }
+
+    private String describeHolders(String agentId) {
+        StringBuilder sb = new StringBuilder("[");
+        for (LockRecord record : held.values()) {
+            if (!record.agentId.equals(agentId)) continue;
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(record.operation).append(' ').append(record.mode).append(' ').append(record.target)
+                    .append(" @").append(record.thread.getName())
+                    .append(' ').append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - record.sinceNanos)).append("ms");
+        }
+        return sb.append(']').toString();
+    }
+
+    private Timer waitTimer(LockRecord record) {
+        return Timer.builder("filesecbox.lock.wait")
+                .description("Time spent waiting for a lock")
+                .tag("operation", record.operation).tag("mode", record.mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static List<LockRecord> sortedByAge(Collection<LockRecord> records) {
+        List<LockRecord> list = new ArrayList<>(records);
+        list.sort(Comparator.comparingLong(r -> r.sinceNanos));
+        return list;
+    }
+
+    private static final class LockRecord {
+        private final String agentId;
+        private final String target;
+        private final String operation;
+        private final String mode;
+        private final Thread thread;
+        private final long sinceNanos;
+
+        private LockRecord(String agentId, String target, String operation, String mode, Thread thread) {
+            this(agentId, target, operation, mode, thread, System.nanoTime());
+        }
+
+        private LockRecord(String agentId, String target, String operation, String mode, Thread thread, long sinceNanos) {
+            this.agentId = agentId;
+            this.target = target;
+            this.operation = operation;
+            this.mode = mode;
+            this.thread = thread;
+            this.sinceNanos = sinceNanos;
+        }
+
+        private LockRecord restart() {
+            return new LockRecord(agentId, target, operation, mode, thread, System.nanoTime());
+        }
+
+        private Map<String, Object> describe() {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("agentId", agentId);
+            entry.put("target", target);
+            entry.put("operation", operation);
+            entry.put("mode", mode);
+            entry.put("thread", thread.getName());
+            entry.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sinceNanos));
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.filesecbox.service;
+
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 内容寻址存储：以 SHA-256 为键，将内容相同的文件收敛到 {productRoot}/.blobs 下的同一个 inode。
+ * 基线中的文件以硬链接指向 blob，目录树本身即为指向 blob 的清单；link 模式的工作区再链接到基线，
+ * 与普通硬链接一样依靠写时复制（覆写前断链、指令执行前物化私有副本）隔离写入。
+ * 复用已有 blob 前校验其内容仍与摘要一致，被意外改写的 blob 不会再传播给新文件。
+ */
+@Service
+public class BlobStore {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BlobStore.class);
+    private static final String BLOBS_DIR = ".blobs";
+
+    @Autowired
+    private ProductRootResolver productRootResolver;
+
+    @Value("${app.storage.blob.enabled:false}")
+    private boolean enabled;
+
+    private Path blobRoot;
+
+    @PostConstruct
+    public void init() throws IOException {
+        this.blobRoot = productRootResolver.getRoot().resolve(BLOBS_DIR);
+        if (enabled && !StorageService.hardLinksSupported()) {
+            log.warn("Blob store requires inode link counts; disabled on this file system.");
+            enabled = false;
+        }
+        if (enabled) {
+            Files.createDirectories(blobRoot);
+            log.info("Content-addressed blob store enabled at: {}", blobRoot);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将文件收敛为 blob 的硬链接并返回其摘要。blob 不存在时该文件自身成为 blob。
+     */
+    public String intern(Path file) throws IOException {
+        String hash = FileManifest.hash(file);
+        Path blob = blobPath(hash);
+        Files.createDirectories(blob.getParent());
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.createLink(blob, file);
+                return hash;
+            } catch (FileAlreadyExistsException ignored) {
+                // blob 已存在，改为让文件指向 blob
+            }
+            if (Files.isSameFile(blob, file)) return hash;
+            if (!matches(blob, hash, Files.size(file))) {
+                // blob 内容已与摘要不符：摘下该 inode，下一轮由当前文件重新成为 blob
+                log.warn("Blob content no longer matches its hash, replacing: {}", blob);
+                Files.deleteIfExists(blob);
+                continue;
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".blob" + System.nanoTime());
+            try {
+                Files.createLink(tmp, blob);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return hash;
+            } catch (NoSuchFileException e) {
+                // blob 恰好被回收，重试时由当前文件重新成为 blob
+                Files.deleteIfExists(tmp);
+            }
+        }
+        log.warn("Failed to intern file into blob store, keeping private copy: {}", file);
+        return hash;
+    }
+
+    /**
+     * 收敛整个目录树并返回其清单（清单在收敛完成后扫描，mtime 与 blob 一致）。
+     * previous 为上次的清单，(size, mtime) 未变且已指向对应 blob 的文件不再重新计算摘要。
+     */
+    public FileManifest internTree(Path root, FileManifest previous) throws IOException {
+        if (!Files.isDirectory(root)) return new FileManifest();
+        FileManifest manifest = new FileManifest();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                String rel = root.relativize(file).toString().replace('\\', '/');
+                FileManifest.Entry old = previous != null ? previous.get(rel) : null;
+                String hash;
+                if (old != null && old.getSize() == attrs.size() && old.getMtime() == attrs.lastModifiedTime().toMillis()
+                        && isBlob(file, old.getSha256())) {
+                    hash = old.getSha256();
+                } else {
+                    hash = intern(file);
+                }
+                BasicFileAttributes current = Files.readAttributes(file, BasicFileAttributes.class);
+                manifest.put(rel, new FileManifest.Entry(current.size(), current.lastModifiedTime().toMillis(), hash));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return manifest;
+    }
+
+    private static boolean matches(Path blob, String hash, long size) {
+        try {
+            return Files.size(blob) == size && FileManifest.hash(blob).equals(hash);
+        } catch (NoSuchFileException e) {
+            // blob 恰好被回收，按不匹配处理后重新建立
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean isBlob(Path file, String hash) {
+        try {
+            Path blob = blobPath(hash);
+            return Files.exists(blob) && Files.isSameFile(blob, file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return blobRoot.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * 回收不再被任何基线 / 工作区引用的 blob（链接数仅剩 blob 自身）。
+     */
+    @Scheduled(cron = "0 30 * * * ?")
+    public void collectGarbage() {
+        if (!enabled || !Files.isDirectory(blobRoot)) return;
+        final int[] removed = {0};
+        try {
+            Files.walkFileTree(blobRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Object links = Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+                    if (((Number) links).intValue() <= 1) {
+                        Files.deleteIfExists(file);
+                        removed[0]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            log.info("Blob store garbage collection removed {} unreferenced blobs", removed[0]);
+        } catch (IOException e) {
+            log.error("Error during blob store garbage collection", e);
+        }
+    }
+}
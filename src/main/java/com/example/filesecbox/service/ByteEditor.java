@@ -0,0 +1,165 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.EditRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.List;
+
+/**
+ * 精确编辑引擎：直接在文件字节上做 Boyer-Moore-Horspool 匹配，一趟扫描内完成计数与替换，
+ * 结果写入同目录临时文件后原子 rename 覆盖，失败时原文件保持不变。
+ * 多个编辑同时针对原始内容匹配并在同一趟扫描中替换；不同编辑的匹配区间重叠视为冲突。
+ * UTF-8 自同步，字节匹配与按字符匹配结果一致，且不会改写文件中其余的非法字节。
+ */
+final class ByteEditor {
+
+    // 小于该大小的文件直接读入堆内存，否则内存映射
+    private static final long MAP_THRESHOLD = 256 * 1024;
+
+    // Windows 上被映射的文件在释放前无法被 rename 覆盖，只读入堆内存
+    private static final boolean IS_WIN = System.getProperty("os.name").toLowerCase().contains("win");
+
+    private ByteEditor() {
+    }
+
+    static void apply(Path path, List<EditRequest> edits) throws IOException {
+        int k = edits.size();
+        byte[][] patterns = new byte[k][];
+        byte[][] replacements = new byte[k][];
+        int[][] shifts = new int[k][];
+        for (int i = 0; i < k; i++) {
+            EditRequest edit = edits.get(i);
+            if (edit.getOldString() == null || edit.getOldString().isEmpty()) {
+                throw new RuntimeException("Security Error: 'old_string' cannot be empty for replacement operation.");
+            }
+            patterns[i] = edit.getOldString().getBytes(StandardCharsets.UTF_8);
+            replacements[i] = edit.getNewString() == null ? new byte[0] : edit.getNewString().getBytes(StandardCharsets.UTF_8);
+            shifts[i] = shiftTable(patterns[i]);
+        }
+
+        Path tmp = null;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = in.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Edit Error: File is too large to edit: " + path.getFileName());
+            }
+            int size = (int) fileSize;
+            ByteBuffer content = (size < MAP_THRESHOLD || IS_WIN)
+                    ? ByteBuffer.wrap(Files.readAllBytes(path))
+                    : in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            size = content.limit();
+
+            // 每个编辑的下一处匹配位置，按出现顺序依次处理
+            int[] next = new int[k];
+            int[] counts = new int[k];
+            for (int i = 0; i < k; i++) {
+                next[i] = indexOf(content, 0, size, patterns[i], shifts[i]);
+            }
+            FileChannel out = null;
+            int cursor = 0;
+            try {
+                while (true) {
+                    int chosen = -1;
+                    for (int i = 0; i < k; i++) {
+                        if (next[i] >= 0 && (chosen < 0 || next[i] < next[chosen])) chosen = i;
+                    }
+                    if (chosen < 0) break;
+                    int start = next[chosen];
+                    int end = start + patterns[chosen].length;
+                    for (int i = 0; i < k; i++) {
+                        if (i != chosen && next[i] >= 0 && next[i] < end) {
+                            throw new RuntimeException(String.format(
+                                    "Edit Conflict: '%s' and '%s' overlap at byte %d. Please refine your search strings.",
+                                    edits.get(chosen).getOldString(), edits.get(i).getOldString(), next[i]));
+                        }
+                    }
+                    counts[chosen]++;
+                    if (out == null) {
+                        tmp = Files.createTempFile(path.getParent(), "." + path.getFileName() + ".", ".edit");
+                        out = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                    }
+                    write(out, slice(content, cursor, start));
+                    write(out, ByteBuffer.wrap(replacements[chosen]));
+                    cursor = end;
+                    next[chosen] = indexOf(content, end, size, patterns[chosen], shifts[chosen]);
+                }
+                for (int i = 0; i < k; i++) {
+                    EditRequest edit = edits.get(i);
+                    if (counts[i] != edit.getExpectedReplacements()) {
+                        throw new RuntimeException(String.format(
+                                "Edit Mismatch: '%s' found %d times, but expected %d times. Please refine your search string.",
+                                edit.getOldString(), counts[i], edit.getExpectedReplacements()));
+                    }
+                }
+                if (out == null) return; // 没有任何匹配，内容不变
+                write(out, slice(content, cursor, size));
+                out.force(false);
+            } finally {
+                if (out != null) out.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (tmp != null) Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        copyPermissions(path, tmp);
+        // rename 后目标是新的 inode，硬链接供给的基线文件不受影响
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int[] shiftTable(byte[] pattern) {
+        int[] shift = new int[256];
+        int last = pattern.length - 1;
+        java.util.Arrays.fill(shift, pattern.length);
+        for (int i = 0; i < last; i++) {
+            shift[pattern[i] & 0xff] = last - i;
+        }
+        return shift;
+    }
+
+    /**
+     * Boyer-Moore-Horspool：在 [from, limit) 中查找 pattern，返回起始下标或 -1。
+     */
+    static int indexOf(ByteBuffer haystack, int from, int limit, byte[] pattern, int[] shift) {
+        int last = pattern.length - 1;
+        int i = from;
+        while (i <= limit - pattern.length) {
+            int j = last;
+            while (haystack.get(i + j) == pattern[j]) {
+                if (j == 0) return i;
+                j--;
+            }
+            i += shift[haystack.get(i + last) & 0xff];
+        }
+        return -1;
+    }
+
+    private static ByteBuffer slice(ByteBuffer content, int from, int to) {
+        ByteBuffer view = content.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view;
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            PosixFileAttributeView view = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+            if (view != null) {
+                Files.setPosixFilePermissions(to, view.readAttributes().permissions());
+            }
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // 权限复制失败时沿用临时文件的默认权限
+        }
+    }
+}
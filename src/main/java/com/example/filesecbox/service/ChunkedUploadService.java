@@ -0,0 +1,336 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.UploadSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片断点续传上传：先声明目标路径与总大小，再以任意顺序、可并行地按字节偏移上传分片，最后提交。
+ * 分片通过 FileChannel 定位写直接落到工作区 .uploads/ 下的临时文件，不经过 multipart 解析，也不持有任何 agent 锁；
+ * 只有提交时的原子 rename 在目标路径写锁内完成。已收到的区间持久化在 .meta 文件中，服务重启后仍可续传。
+ */
+@Service
+public class ChunkedUploadService {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    static final String UPLOADS_DIR = ".uploads";
+
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    @Autowired
+    private SandboxService sandboxService;
+
+    // 单个上传会话允许的最大文件大小 (字节)
+    @Value("${app.upload.chunked.max-size:10737418240}")
+    private long maxSize;
+
+    // 超过该时长没有任何分片写入的会话会被清理 (小时)
+    @Value("${app.upload.chunked.expire-hours:24}")
+    private long expireHours;
+
+    private final Map<Path, Session> sessions = new ConcurrentHashMap<>();
+
+    public UploadSession initiate(String userId, String agentId, String logicalPath, long size) throws IOException {
+        if (size < 0 || size > maxSize) {
+            throw new IOException("Upload Error: Invalid size " + size + ", max allowed is " + maxSize + " bytes.");
+        }
+        sandboxService.resolveUploadTarget(userId, agentId, logicalPath);
+        logicalPath = SandboxService.normalizeLogicalPath(logicalPath);
+        Path stagingDir = sandboxService.uploadStagingDir(userId, agentId);
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Session session = new Session(uploadId, stagingDir, logicalPath, size);
+        try (RandomAccessFile raf = new RandomAccessFile(session.dataFile.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        session.persist();
+        sessions.put(session.dataFile, session);
+        log.info("Chunked upload initiated: {}, target: {}, size: {}", uploadId, logicalPath, size);
+        return session.describe();
+    }
+
+    /**
+     * 将请求体写入 [offset, offset + 长度) 区间。分片可乱序、可并行、可重复上传。
+     * 声明了长度的分片越界时在写入前拒绝；写入中途失败的分片会把已覆盖的区间重新标记为未收到。
+     * 写入期间会话记为有在途分片，提交会被拒绝；会话已提交或取消时分片被拒绝。
+     * @param length 请求体长度，未知时为 -1
+     */
+    public UploadSession writePart(String userId, String agentId, String uploadId, long offset, long length, InputStream body) throws IOException {
+        Session session = session(userId, agentId, uploadId);
+        if (offset < 0 || offset > session.size || (length >= 0 && offset + length > session.size)) {
+            throw new IOException("Upload Error: Part [" + offset + ", +" + length + ") exceeds the declared size " + session.size + ".");
+        }
+        session.beginWrite();
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(session.dataFile, StandardOpenOption.WRITE);
+             ReadableByteChannel source = Channels.newChannel(body)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                if (position + buffer.remaining() > session.size) {
+                    throw new IOException("Upload Error: Part exceeds the declared size " + session.size + ".");
+                }
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            session.received(offset, position);
+        } catch (IOException e) {
+            session.invalidate(offset, position);
+            throw e;
+        } finally {
+            session.endWrite();
+        }
+        return session.describe();
+    }
+
+    public UploadSession status(String userId, String agentId, String uploadId) throws IOException {
+        return session(userId, agentId, uploadId).describe();
+    }
+
+    public String commit(String userId, String agentId, String uploadId) throws IOException {
+        Session session = session(userId, agentId, uploadId);
+        synchronized (session) {
+            if (session.closed) throw new IOException("Upload not found: " + uploadId);
+            // 在途分片在会话锁外写入；持有会话锁期间不会有新分片开始，只需确认没有未结束的分片
+            if (session.writers > 0) {
+                throw new IOException("Upload Error: " + session.writers + " part(s) still being written, retry the commit after they finish.");
+            }
+            if (session.receivedBytes() != session.size) {
+                throw new IOException("Upload Error: Upload is incomplete, missing ranges: " + session.missingRanges());
+            }
+            String message = sandboxService.publishUpload(userId, agentId, session.path, session.dataFile);
+            discard(session);
+            log.info("Chunked upload committed: {}, target: {}", uploadId, session.path);
+            return message;
+        }
+    }
+
+    public String abort(String userId, String agentId, String uploadId) throws IOException {
+        Session session = session(userId, agentId, uploadId);
+        synchronized (session) {
+            if (!session.closed) discard(session);
+        }
+        return "Upload aborted: " + uploadId;
+    }
+
+    /**
+     * 清理超过 expire-hours 未写入的会话；工作区 .uploads/ 只由这里清理。
+     * 未加载到内存的会话 (服务重启后未再访问) 按其文件的修改时间判断。
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeAbandonedSessions() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(expireHours);
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                if (session.writers == 0 && (!Files.exists(session.dataFile) || session.lastTouched < cutoff)) {
+                    try {
+                        discard(session);
+                        log.info("Purged abandoned upload: {}", session.uploadId);
+                    } catch (IOException e) {
+                        log.warn("Failed to purge upload: {}", session.uploadId, e);
+                    }
+                }
+            }
+        }
+        try {
+            for (Path stagingDir : sandboxService.listUploadStagingDirs()) {
+                purgeUnloadedFiles(stagingDir, cutoff);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan upload staging directories", e);
+        }
+    }
+
+    private void purgeUnloadedFiles(Path stagingDir, long cutoff) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                String uploadId = dot > 0 ? name.substring(0, dot) : name;
+                if (sessions.containsKey(stagingDir.resolve(uploadId + ".data"))) continue;
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                    log.info("Purged stale upload file: {}", file);
+                }
+            }
+        }
+    }
+
+    private Session session(String userId, String agentId, String uploadId) throws IOException {
+        if (uploadId == null || !uploadId.matches("^[0-9a-f]{32}$")) {
+            throw new IOException("Invalid upload id.");
+        }
+        Path stagingDir = sandboxService.uploadStagingDir(userId, agentId);
+        Path dataFile = stagingDir.resolve(uploadId + ".data");
+        Session session = sessions.get(dataFile);
+        if (session == null) {
+            // 服务重启后从 .meta 恢复会话
+            Session loaded = Session.load(uploadId, stagingDir);
+            if (loaded != null) {
+                Session existing = sessions.putIfAbsent(dataFile, loaded);
+                session = existing != null ? existing : loaded;
+            }
+        }
+        if (session == null || !Files.exists(dataFile)) {
+            if (session != null) sessions.remove(dataFile, session);
+            throw new IOException("Upload not found: " + uploadId);
+        }
+        return session;
+    }
+
+    private void discard(Session session) throws IOException {
+        session.closed = true;
+        sessions.remove(session.dataFile, session);
+        Files.deleteIfExists(session.dataFile);
+        Files.deleteIfExists(session.metaFile);
+    }
+
+    static final class Session {
+        final String uploadId;
+        final Path dataFile;
+        final Path metaFile;
+        final String path;
+        final long size;
+        // 已收到的区间：起点 -> 终点 (不含)，相邻或重叠的区间会被合并
+        final TreeMap<Long, Long> ranges = new TreeMap<>();
+        volatile long lastTouched = System.currentTimeMillis();
+        boolean closed;
+        // 正在写入的分片数
+        int writers;
+
+        Session(String uploadId, Path stagingDir, String path, long size) {
+            this.uploadId = uploadId;
+            this.dataFile = stagingDir.resolve(uploadId + ".data");
+            this.metaFile = stagingDir.resolve(uploadId + ".meta");
+            this.path = path;
+            this.size = size;
+        }
+
+        static Session load(String uploadId, Path stagingDir) {
+            Path metaFile = stagingDir.resolve(uploadId + ".meta");
+            if (!Files.exists(metaFile)) return null;
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(metaFile)) {
+                props.load(in);
+                Session session = new Session(uploadId, stagingDir, props.getProperty("path"), Long.parseLong(props.getProperty("size")));
+                String ranges = props.getProperty("ranges", "");
+                for (String range : ranges.split(",")) {
+                    if (range.isEmpty()) continue;
+                    String[] bounds = range.split("-");
+                    session.ranges.put(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+                }
+                return session;
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        synchronized void beginWrite() throws IOException {
+            if (closed) throw new IOException("Upload not found: " + uploadId);
+            writers++;
+        }
+
+        synchronized void endWrite() {
+            writers--;
+        }
+
+        synchronized void received(long start, long end) throws IOException {
+            lastTouched = System.currentTimeMillis();
+            if (end <= start) return;
+            Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+            if (floor != null && floor.getValue() >= start) {
+                start = floor.getKey();
+                end = Math.max(end, floor.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                ranges.remove(next.getKey());
+            }
+            ranges.put(start, end);
+            if (!closed) persist();
+        }
+
+        synchronized void invalidate(long start, long end) throws IOException {
+            if (end <= start) return;
+            Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+            if (floor != null && floor.getValue() > start) {
+                ranges.put(floor.getKey(), start);
+                if (floor.getKey() == start) ranges.remove(start);
+                if (floor.getValue() > end) ranges.put(end, floor.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = ranges.ceilingEntry(start)) != null && next.getKey() < end) {
+                ranges.remove(next.getKey());
+                if (next.getValue() > end) ranges.put(end, next.getValue());
+            }
+            if (!closed) persist();
+        }
+
+        synchronized long receivedBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                total += range.getValue() - range.getKey();
+            }
+            return total;
+        }
+
+        synchronized List<String> missingRanges() {
+            List<String> missing = new ArrayList<>();
+            long cursor = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                if (range.getKey() > cursor) missing.add(cursor + "-" + (range.getKey() - 1));
+                cursor = range.getValue();
+            }
+            if (cursor < size) missing.add(cursor + "-" + (size - 1));
+            return missing;
+        }
+
+        synchronized UploadSession describe() {
+            UploadSession view = new UploadSession();
+            view.setUploadId(uploadId);
+            view.setPath(path);
+            view.setSize(size);
+            view.setReceivedBytes(receivedBytes());
+            view.setMissingRanges(missingRanges());
+            view.setComplete(view.getReceivedBytes() == size);
+            return view;
+        }
+
+        synchronized void persist() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(range.getKey()).append('-').append(range.getValue());
+            }
+            Properties props = new Properties();
+            props.setProperty("path", path);
+            props.setProperty("size", String.valueOf(size));
+            props.setProperty("ranges", sb.toString());
+            Path tmp = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "Chunked Upload Session");
+            }
+            Files.move(tmp, metaFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
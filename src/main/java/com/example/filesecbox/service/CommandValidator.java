@@ -0,0 +1,225 @@
+package com.example.filesecbox.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 指令安全校验：单遍分词 + 不可变策略表。
+ * 只依赖指令字符串本身的校验结果（白名单、逻辑路径范围、SKILL.md 位置、skill-creator 写保护）按指令缓存 (LRU)，
+ * 依赖工作区的物理路径范围校验每次基于缓存中已解析好的路径执行。
+ */
+@Component
+public class CommandValidator {
+
+    @Autowired
+    private ProductRootResolver productRootResolver;
+
+    @Value("${app.execute.validator.cache-size:1024}")
+    private int cacheSize;
+
+    // 开放的基础指令白名单 (对齐 DESIGN.md)
+    private static final Set<String> ALLOWED_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "python", "python3", "bash", "sh", "cmd", "ls", "cat", "echo", "grep", "sed",
+            "mkdir", "touch", "cp", "mv", "rm", "tee", "find", "chmod", "xargs", "curl"
+    )));
+
+    // 禁止作用于 skill-creator 的写类指令
+    private static final Set<String> WRITE_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "mkdir", "touch", "cp", "mv", "rm", "tee", "chmod"
+    )));
+
+    private static final String SKILL_CREATOR_DIR = "skill-creator";
+
+    private Path creatorPath;
+    private String normRoot;
+    private String normGlobalCreator;
+    private Map<String, ValidatedCommand> cache;
+
+    @PostConstruct
+    public void init() {
+        Path rootPath = productRootResolver.getRoot();
+        creatorPath = rootPath.resolve(SKILL_CREATOR_DIR).normalize();
+        normRoot = rootPath.toString().replace("\\", "/").toLowerCase();
+        normGlobalCreator = creatorPath.toString().replace("\\", "/").toLowerCase();
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, ValidatedCommand>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ValidatedCommand> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * 校验指令，失败时抛出 "Security Error" 异常；通过时返回解析结果（首个指令、引用的逻辑路径等）。
+     */
+    public ValidatedCommand validate(String commandLine, Path workingDir) {
+        ValidatedCommand validated = cache.get(commandLine);
+        if (validated == null) {
+            validated = parse(commandLine);
+            cache.put(commandLine, validated);
+        }
+
+        // 物理层校验：指向产品根目录的绝对路径必须落在当前工作区或全局工具目录下
+        if (!validated.physicalPaths.isEmpty()) {
+            Path workspace = workingDir.toAbsolutePath().normalize();
+            for (int i = 0; i < validated.physicalPaths.size(); i++) {
+                Path target = validated.physicalPaths.get(i);
+                if (!target.startsWith(workspace) && !target.startsWith(creatorPath)) {
+                    throw new RuntimeException("Security Error: Accessing path outside workspace scope: " + validated.physicalTokens.get(i));
+                }
+            }
+        }
+        return validated;
+    }
+
+    private ValidatedCommand parse(String commandLine) {
+        // 1. 安全校验：禁止路径穿越
+        if (commandLine.contains("..")) {
+            throw new RuntimeException("Security Error: Path traversal '..' is strictly forbidden.");
+        }
+
+        // 2. 指令白名单校验：仅校验首个指令
+        String trimmed = commandLine.trim();
+        int end = 0;
+        while (end < trimmed.length() && !isWhitespace(trimmed.charAt(end))) end++;
+        String rawFirst = trimmed.substring(0, end);
+        String firstCmd = rawFirst;
+        if (firstCmd.length() >= 2 && firstCmd.startsWith("\"") && firstCmd.endsWith("\"")) {
+            firstCmd = firstCmd.substring(1, firstCmd.length() - 1);
+        }
+        if (!ALLOWED_COMMANDS.contains(firstCmd)) {
+            throw new RuntimeException("Security Error: Command '" + firstCmd + "' is not allowed.");
+        }
+
+        // 3. 强制路径前缀校验：命令中涉及的任何路径/文件名必须以 skills/ 或 files/ 开头
+        List<String> pathTokens = new ArrayList<>();
+        boolean hasRedirect = commandLine.indexOf('>') >= 0;
+        for (String token : tokenize(trimmed.substring(end))) {
+            // 忽略纯数字（版本号）、短指令参数（如 -rf, --v）
+            if (token.length() < 3 || token.charAt(0) == '-' || isNumeric(token)) continue;
+            // 仅处理包含路径分隔符或文件名后缀的片段，以及裸的 skills / files 目录
+            if (token.indexOf('/') < 0 && token.indexOf('\\') < 0 && token.indexOf('.') < 0
+                    && !token.equals("skills") && !token.equals("files")) continue;
+
+            String normalized = token.replace('\\', '/').toLowerCase();
+            if (normalized.endsWith("/skill.md") || normalized.equals("skill.md")) {
+                // 必须是 skills/{name}/SKILL.md 格式
+                if (!normalized.startsWith("skills/") || countSlashes(normalized) != 2) {
+                    throw new RuntimeException("Security Error: 'SKILL.md' is a system reserved file. You can only create/edit it at the root of a skill (e.g., skills/my_skill/SKILL.md).");
+                }
+            }
+
+            boolean isLogicPath = normalized.startsWith("skills/") || normalized.startsWith("files/") ||
+                    normalized.equals("skills") || normalized.equals("files");
+            boolean isGlobalCreatorPath = normalized.startsWith(normGlobalCreator);
+            if (!isLogicPath && !isGlobalCreatorPath) {
+                throw new RuntimeException("Security Error: Path '" + token + "' is out of operable scope. Must start with 'skills/' or 'files/'.");
+            }
+
+            // 针对 skill-creator 的写保护
+            if (isGlobalCreatorPath) {
+                if (WRITE_COMMANDS.contains(firstCmd)) {
+                    throw new RuntimeException("Security Error: Modification of 'skill-creator' is strictly forbidden. Command '" + firstCmd + "' blocked.");
+                }
+                if (hasRedirect) {
+                    throw new RuntimeException("Security Error: Redirecting output to 'skill-creator' is strictly forbidden.");
+                }
+            }
+            pathTokens.add(token);
+        }
+
+        // 4. 预解析指向产品根目录的物理路径，供每次调用按工作区校验
+        List<String> physicalTokens = new ArrayList<>();
+        List<Path> physicalPaths = new ArrayList<>();
+        if (commandLine.replace("\\", "/").toLowerCase().contains(normRoot)) {
+            for (String token : tokenize(commandLine)) {
+                if (token.replace('\\', '/').toLowerCase().contains(normRoot)) {
+                    physicalTokens.add(token);
+                    physicalPaths.add(Paths.get(token).toAbsolutePath().normalize());
+                }
+            }
+        }
+        return new ValidatedCommand(firstCmd, pathTokens, physicalTokens, physicalPaths);
+    }
+
+    /**
+     * 单遍分词：双引号包裹的内容作为一个片段，其余按空白与 &gt; &lt; | &amp; 切分。
+     */
+    static List<String> tokenize(String s) {
+        List<String> tokens = new ArrayList<>();
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                int close = s.indexOf('"', i + 1);
+                if (close > i + 1) {
+                    tokens.add(s.substring(i + 1, close));
+                    i = close + 1;
+                    continue;
+                }
+            }
+            if (isDelimiter(c)) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < n && !isDelimiter(s.charAt(j))) j++;
+            tokens.add(s.substring(i, j));
+            i = j;
+        }
+        return tokens;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDelimiter(char c) {
+        return isWhitespace(c) || c == '>' || c == '<' || c == '|' || c == '&';
+    }
+
+    private static boolean isNumeric(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') return false;
+        }
+        return true;
+    }
+
+    private static int countSlashes(String s) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '/') count++;
+        }
+        return count;
+    }
+
+    /**
+     * 校验通过的指令形态：缓存复用，内容不可变。
+     */
+    public static final class ValidatedCommand {
+        private final String firstCommand;
+        private final List<String> pathTokens;
+        private final List<String> physicalTokens;
+        private final List<Path> physicalPaths;
+
+        ValidatedCommand(String firstCommand, List<String> pathTokens, List<String> physicalTokens, List<Path> physicalPaths) {
+            this.firstCommand = firstCommand;
+            this.pathTokens = Collections.unmodifiableList(pathTokens);
+            this.physicalTokens = Collections.unmodifiableList(physicalTokens);
+            this.physicalPaths = Collections.unmodifiableList(physicalPaths);
+        }
+
+        public String getFirstCommand() { return firstCommand; }
+
+        /** 指令中引用的逻辑路径片段 (skills/、files/ 或 skill-creator 下的路径) */
+        public List<String> getPathTokens() { return pathTokens; }
+    }
+}
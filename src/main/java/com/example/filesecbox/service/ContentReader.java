@@ -0,0 +1,141 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.FileContentResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 文本内容读取：整文件读取按字节一次解码为字符串，不拆分行；按行号分页时只解码目标区间；大文件借助稀疏行偏移索引直接定位起始行，
+ * 索引持久化在工作区的 .line-index/ 下并在内存中 LRU 缓存。二进制文件拒绝按文本读取。
+ */
+@Service
+public class ContentReader {
+
+    static final String LINE_INDEX_DIR = ".line-index";
+
+    private static final int BINARY_SNIFF_BYTES = 8000;
+
+    // 超过该大小的文件在分页读取时使用行偏移索引
+    @Value("${app.content.line-index.min-bytes:1048576}")
+    private long indexMinBytes;
+
+    private final Map<Path, LineIndex> indexes = Collections.synchronizedMap(new LinkedHashMap<Path, LineIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+            return size() > 256;
+        }
+    });
+
+    /**
+     * 读取文本内容。offset 从 1 开始；offset 与 limit 同时给出时只返回该区间的行 (content 与 lines)，
+     * 否则 content 为整个文件的原样内容，不返回 lines。
+     * @param indexDir 行偏移索引的持久化目录，为 null 时只在内存中缓存
+     */
+    public FileContentResult readLines(Path file, Path indexDir, Integer offset, Integer limit) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attrs.isRegularFile()) {
+            throw new IOException("Not a regular file: " + file.getFileName());
+        }
+        boolean paged = offset != null && limit != null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (isBinary(channel)) {
+                throw new IOException("Binary file cannot be read as text, use the raw content API instead.");
+            }
+            if (!paged) {
+                return new FileContentResult(readAll(channel, attrs.size()));
+            }
+            long skip = Math.max(0, offset - 1);
+            long max = Math.max(0, limit);
+            long startLine = 0;
+            long startOffset = 0;
+            if (skip > 0 && attrs.size() >= indexMinBytes) {
+                long[] checkpoint = lineIndex(file, attrs, indexDir).seek(skip);
+                startLine = checkpoint[0];
+                startOffset = checkpoint[1];
+            }
+            channel.position(startOffset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+            for (long i = startLine; i < skip; i++) {
+                if (reader.readLine() == null) break;
+            }
+            List<String> lines = new ArrayList<>();
+            String line;
+            while (lines.size() < max && (line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return new FileContentResult(String.join("\n", lines), lines);
+        }
+    }
+
+    private static String readAll(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("File is too large to read at once, use offset/limit or the raw content API instead.");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        channel.position(0);
+        while (buffer.hasRemaining()) {
+            // 文件在读取期间被截断时按已读部分返回
+            if (channel.read(buffer) < 0) break;
+        }
+        // new String 对非法字节使用替换字符，与分页读取的解码行为一致
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private LineIndex lineIndex(Path file, BasicFileAttributes attrs, Path indexDir) throws IOException {
+        LineIndex index = indexes.get(file);
+        if (index != null && index.matches(attrs)) return index;
+        Path indexFile = indexDir != null ? indexDir.resolve(indexName(file)) : null;
+        if (indexFile != null) {
+            index = LineIndex.load(indexFile);
+        }
+        if (index == null || !index.matches(attrs)) {
+            index = LineIndex.build(file, attrs);
+            if (indexFile != null) {
+                index.store(indexFile);
+            }
+        }
+        indexes.put(file, index);
+        return index;
+    }
+
+    private static boolean isBinary(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(BINARY_SNIFF_BYTES);
+        channel.read(head, 0);
+        head.flip();
+        while (head.hasRemaining()) {
+            if (head.get() == 0) return true;
+        }
+        return false;
+    }
+
+    private static String indexName(Path file) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.append(".idx").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.CommandRequest;
+import com.example.filesecbox.model.ExecutionJob;
+import com.example.filesecbox.model.ExecutionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步执行任务：提交后立即返回 jobId，指令在有界线程池中运行，
+ * 客户端可轮询状态或通过 SSE 订阅增量 stdout / stderr。结束的任务按保留时长清理。
+ * 输出回调只把事件放入各订阅者的待发队列，实际发送由独立的推送线程完成，慢订阅者不会阻塞进程输出的读取。
+ * 工作线程只在拿到执行槽位后才运行任务：租户已达配额时任务保持 QUEUED 并稍后重新入队，不占用工作线程，
+ * 单个租户的积压不会挡住其他租户；每个用户未结束的任务数另有上限，避免独占任务队列。
+ */
+@Service
+public class ExecutionJobService {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExecutionJobService.class);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Autowired
+    private SandboxService sandboxService;
+
+    @Autowired
+    private ExecutionScheduler executionScheduler;
+
+    @Value("${app.execute.async.workers:8}")
+    private int workers;
+
+    @Value("${app.execute.async.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.execute.async.retention-minutes:30}")
+    private long retentionMinutes;
+
+    // 每个任务为断线重连保留的输出上限（字符数），超出后丢弃最早的片段
+    @Value("${app.execute.async.replay-chars:1048576}")
+    private int replayChars;
+
+    // SSE 推送线程数；每个订阅者同一时刻最多占用一个推送线程
+    @Value("${app.execute.async.stream-threads:4}")
+    private int streamThreads;
+
+    // 单个用户 (agent 内) 未结束的异步任务上限
+    @Value("${app.execute.async.per-user-pending:16}")
+    private int perUserPending;
+
+    // 拿不到执行槽位的任务重新入队的间隔 (毫秒)
+    @Value("${app.execute.async.retry-ms:200}")
+    private long retryMillis;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // agentId/userId -> 未结束的任务数，归零即移除
+    private final Map<String, Integer> pendingByUser = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+    private ExecutorService streamExecutor;
+    private ScheduledExecutorService retryTimer;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "execute-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        AtomicInteger streamSeq = new AtomicInteger();
+        streamExecutor = Executors.newFixedThreadPool(streamThreads, r -> {
+            Thread t = new Thread(r, "execute-stream-" + streamSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "execute-job-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        streamExecutor.shutdownNow();
+        retryTimer.shutdownNow();
+    }
+
+    public ExecutionJob submit(String userId, String agentId, CommandRequest request) {
+        if (request.getCommand() == null || request.getCommand().trim().isEmpty()) {
+            throw new RuntimeException("Command must not be empty.");
+        }
+        Job job = new Job(UUID.randomUUID().toString().replace("-", ""), userId, agentId, request.getCommand());
+        if (!reservePending(job.userKey())) {
+            log.warn("Too many pending jobs, rejected job for agent: {}, user: {}", agentId, userId);
+            throw new RuntimeException("Server busy: too many pending jobs for this user (max " + perUserPending + "), please retry later.");
+        }
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, request));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            releasePending(job.userKey());
+            log.warn("Execution queue full, rejected job for agent: {}, user: {}", agentId, userId);
+            throw new RuntimeException("Server busy: execution queue is full, please retry later.");
+        }
+        log.info("Execution job submitted: {}, agentId: {}, userId: {}", job.id, agentId, userId);
+        return job.snapshot();
+    }
+
+    public ExecutionJob getJob(String userId, String agentId, String jobId) {
+        return find(userId, agentId, jobId).snapshot();
+    }
+
+    /**
+     * 订阅任务输出：先回放已缓存的片段，再推送后续增量，结束时发送 done 事件（含最终状态）并关闭连接。
+     * 任务不存在时抛出异常，由调用方转换为错误事件。
+     */
+    public SseEmitter stream(String userId, String agentId, String jobId) {
+        Job job = find(userId, agentId, jobId);
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> removeSubscriber(job, subscriber));
+        emitter.onTimeout(() -> removeSubscriber(job, subscriber));
+        synchronized (job) {
+            for (String[] chunk : job.output) {
+                subscriber.offer(chunk[0], chunk[1]);
+            }
+            if (job.isFinished()) {
+                subscriber.offer("done", job.snapshot());
+            } else {
+                job.subscribers.add(subscriber);
+            }
+        }
+        subscriber.schedule();
+        return emitter;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void purgeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedMillis < cutoff);
+    }
+
+    /**
+     * 非阻塞地申请执行槽位；拿不到时任务保持 QUEUED，稍后重新入队，工作线程立即让给其他任务。
+     */
+    private void run(Job job, CommandRequest request) {
+        ExecutionScheduler.Ticket slot = executionScheduler.tryAcquire(job.agentId, job.userId);
+        if (slot == null) {
+            retryLater(job, request);
+            return;
+        }
+        job.start();
+        try {
+            ExecutionResult result = sandboxService.execute(job.userId, job.agentId, request, job::append, slot);
+            job.finish("SUCCEEDED", result, null);
+        } catch (Exception e) {
+            log.error("Execution job failed: {}", job.id, e);
+            job.finish("FAILED", null, e.getMessage());
+        } finally {
+            executionScheduler.release(slot);
+            releasePending(job.userKey());
+        }
+    }
+
+    private void retryLater(Job job, CommandRequest request) {
+        try {
+            retryTimer.schedule(() -> {
+                try {
+                    executor.execute(() -> run(job, request));
+                } catch (RejectedExecutionException e) {
+                    // 任务队列已满：已接受的任务不丢弃，继续等待
+                    retryLater(job, request);
+                }
+            }, retryMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 服务关闭中
+            job.finish("FAILED", null, "Service is shutting down.");
+            releasePending(job.userKey());
+        }
+    }
+
+    private boolean reservePending(String userKey) {
+        boolean[] reserved = new boolean[1];
+        pendingByUser.compute(userKey, (k, n) -> {
+            int count = n == null ? 0 : n;
+            reserved[0] = count < perUserPending;
+            return reserved[0] ? count + 1 : n;
+        });
+        return reserved[0];
+    }
+
+    private void releasePending(String userKey) {
+        pendingByUser.computeIfPresent(userKey, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private Job find(String userId, String agentId, String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.userId.equals(userId) || !job.agentId.equals(agentId)) {
+            throw new RuntimeException("Job not found: " + jobId);
+        }
+        return job;
+    }
+
+    private void removeSubscriber(Job job, Subscriber subscriber) {
+        synchronized (job) {
+            job.subscribers.remove(subscriber);
+        }
+    }
+
+    private static String now() {
+        return LocalDateTime.now().format(TIME_FORMAT);
+    }
+
+    private final class Job {
+        final String id;
+        final String userId;
+        final String agentId;
+        final String command;
+        final String submittedAt = now();
+        final Deque<String[]> output = new ArrayDeque<>();
+        final List<Subscriber> subscribers = new ArrayList<>();
+        int bufferedChars;
+        String status = "QUEUED";
+        String startedAt;
+        String finishedAt;
+        long finishedMillis;
+        ExecutionResult result;
+        String error;
+
+        Job(String id, String userId, String agentId, String command) {
+            this.id = id;
+            this.userId = userId;
+            this.agentId = agentId;
+            this.command = command;
+        }
+
+        boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        String userKey() {
+            return agentId + "/" + userId;
+        }
+
+        synchronized void start() {
+            status = "RUNNING";
+            startedAt = now();
+        }
+
+        synchronized void append(String stream, String text) {
+            output.addLast(new String[]{stream, text});
+            bufferedChars += text.length();
+            while (bufferedChars > replayChars && output.size() > 1) {
+                bufferedChars -= output.removeFirst()[1].length();
+            }
+            Iterator<Subscriber> it = subscribers.iterator();
+            while (it.hasNext()) {
+                Subscriber subscriber = it.next();
+                if (!subscriber.offer(stream, text)) {
+                    it.remove();
+                }
+                subscriber.schedule();
+            }
+        }
+
+        synchronized void finish(String finalStatus, ExecutionResult finalResult, String finalError) {
+            status = finalStatus;
+            result = finalResult;
+            error = finalError;
+            finishedAt = now();
+            finishedMillis = System.currentTimeMillis();
+            ExecutionJob snapshot = snapshot();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer("done", snapshot);
+                subscriber.schedule();
+            }
+            subscribers.clear();
+        }
+
+        synchronized ExecutionJob snapshot() {
+            ExecutionJob view = new ExecutionJob();
+            view.setJobId(id);
+            view.setCommand(command);
+            view.setStatus(status);
+            view.setSubmittedAt(submittedAt);
+            view.setStartedAt(startedAt);
+            view.setFinishedAt(finishedAt);
+            view.setResult(result);
+            view.setError(error);
+            return view;
+        }
+    }
+
+    /**
+     * 单个 SSE 订阅者：事件先进入待发队列，由推送线程按顺序发出。待发内容超过回放上限的慢订阅者被断开，
+     * 重连后可从回放缓冲继续。
+     */
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Deque<Object[]> pending = new ArrayDeque<>();
+        int pendingChars;
+        boolean scheduled;
+        boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * 加入待发事件；订阅者已关闭或积压超限时返回 false。
+         */
+        synchronized boolean offer(String name, Object data) {
+            if (closed) return false;
+            pending.addLast(new Object[]{name, data});
+            if (data instanceof String) {
+                pendingChars += ((String) data).length();
+                if (pendingChars > replayChars && pending.size() > 1) {
+                    log.warn("SSE subscriber too slow, disconnecting after {} pending chars", pendingChars);
+                    pending.clear();
+                    pendingChars = 0;
+                    closed = true;
+                    pending.addLast(new Object[]{null, null});
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void schedule() {
+            synchronized (this) {
+                if (scheduled || pending.isEmpty()) return;
+                scheduled = true;
+            }
+            try {
+                streamExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Object[] event;
+                synchronized (this) {
+                    event = pending.pollFirst();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (event[1] instanceof String) pendingChars -= ((String) event[1]).length();
+                }
+                try {
+                    if (event[0] == null) {
+                        emitter.complete();
+                    } else if ("done".equals(event[0])) {
+                        emitter.send(SseEmitter.event().name("done").data(event[1]));
+                        emitter.complete();
+                    } else {
+                        emitter.send(SseEmitter.event().name((String) event[0]).data(event[1]));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    synchronized (this) {
+                        closed = true;
+                        pending.clear();
+                        pendingChars = 0;
+                        scheduled = false;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
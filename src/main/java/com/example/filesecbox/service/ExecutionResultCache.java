@@ -0,0 +1,167 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.ExecutionResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 执行结果缓存 (可选)：对确定性的技能指令，以「工作区 + 指令 + 所引用技能目录与 files/ 路径的内容摘要」为键缓存结果，
+ * 输入未变时直接返回上次的 ExecutionResult，省去整个进程启动。
+ * 只缓存引用了技能、退出码为 0 且输出未截断的结果；按条数与输出字节数做 LRU 淘汰。
+ */
+@Component
+public class ExecutionResultCache {
+
+    @Value("${app.execute.result-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.execute.result-cache.max-entries:1024}")
+    private int maxEntries;
+
+    @Value("${app.execute.result-cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    // 缓存的结果 (LRU)，totalBytes 为所有结果 stdout + stderr 的字符数之和
+    private final LinkedHashMap<String, ExecutionResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    // 目录清单与单文件摘要的备忘，(size, mtime) 未变时不再重新计算摘要
+    private final Map<Path, FileManifest> manifests = Collections.synchronizedMap(lru(4096));
+    private final Map<Path, FileManifest.Entry> fileHashes = Collections.synchronizedMap(lru(4096));
+
+    public ExecutionResultCache(MeterRegistry registry) {
+        hits = Counter.builder("filesecbox.execute.cache").tag("result", "hit")
+                .description("Execution result cache lookups").register(registry);
+        misses = Counter.builder("filesecbox.execute.cache").tag("result", "miss")
+                .description("Execution result cache lookups").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存键；以下情况不缓存，返回 null：指令未引用任何技能目录；路径含通配符 (实际输入由 shell 展开决定)；
+     * 引用的路径不存在 (通常是指令的输出目标，或输入尚未就绪)。
+     */
+    public String key(Path workspaceRoot, String command, List<String> pathTokens) throws IOException {
+        SortedSet<String> units = new TreeSet<>();
+        boolean referencesSkill = false;
+        for (String token : pathTokens) {
+            if (token.indexOf('*') >= 0 || token.indexOf('?') >= 0 || token.indexOf('[') >= 0) return null;
+            String normalized = Paths.get(token.replace('\\', '/')).normalize().toString().replace('\\', '/');
+            String[] parts = normalized.split("/");
+            if ("skills".equals(parts[0])) {
+                // 裸 skills 指整个技能目录
+                units.add(parts.length >= 2 ? "skills/" + parts[1] : "skills");
+                referencesSkill = true;
+            } else if ("files".equals(parts[0])) {
+                units.add(normalized);
+            }
+        }
+        if (!referencesSkill) return null;
+        for (String unit : units) {
+            if (!Files.exists(workspaceRoot.resolve(unit))) return null;
+        }
+
+        MessageDigest md = newDigest();
+        md.update(workspaceRoot.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(command.getBytes(StandardCharsets.UTF_8));
+        for (String unit : units) {
+            md.update((byte) 0);
+            md.update(unit.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) '=');
+            md.update(contentDigest(workspaceRoot.resolve(unit).normalize()).getBytes(StandardCharsets.US_ASCII));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    public synchronized ExecutionResult get(String key) {
+        ExecutionResult cached = results.get(key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(cached);
+    }
+
+    public synchronized void put(String key, ExecutionResult result) {
+        if (result.getExitCode() != 0 || result.isTruncated()) return;
+        long size = sizeOf(result);
+        if (size > maxBytes) return;
+        ExecutionResult previous = results.put(key, copy(result));
+        if (previous != null) totalBytes -= sizeOf(previous);
+        totalBytes += size;
+        Iterator<ExecutionResult> it = results.values().iterator();
+        while ((results.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            totalBytes -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+
+    private String contentDigest(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            FileManifest manifest = FileManifest.scan(path, manifests.get(path));
+            manifests.put(path, manifest);
+            return manifest.digest();
+        }
+        if (!Files.isRegularFile(path)) {
+            fileHashes.remove(path);
+            return "-";
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        FileManifest.Entry old = fileHashes.get(path);
+        if (old != null && old.getSize() == attrs.size() && old.getMtime() == mtime) {
+            return old.getSha256();
+        }
+        String sha = FileManifest.hash(path);
+        fileHashes.put(path, new FileManifest.Entry(attrs.size(), mtime, sha));
+        return sha;
+    }
+
+    private static long sizeOf(ExecutionResult result) {
+        return (result.getStdout() == null ? 0 : result.getStdout().length())
+                + (result.getStderror() == null ? 0 : result.getStderror().length());
+    }
+
+    private static ExecutionResult copy(ExecutionResult result) {
+        return new ExecutionResult(result.getStdout(), result.getStderror(), result.getExitCode());
+    }
+
+    private static <V> LinkedHashMap<Path, V> lru(int capacity) {
+        return new LinkedHashMap<Path, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.filesecbox.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 指令执行调度：限制全局并发进程数，并按 agent / 用户配额公平分配执行槽位。
+ * 拿不到槽位的请求按到达顺序排队，超过等待期限或队列已满则拒绝。
+ * 放行时跳过已达配额的租户，避免单个 agent 占满队列头部阻塞其他租户。
+ * 异步任务不在此排队占用线程：通过 {@link #tryAcquire} 非阻塞地申请槽位，拿不到时由任务服务稍后重试。
+ */
+@Service
+public class ExecutionScheduler {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExecutionScheduler.class);
+
+    @Value("${app.execute.max-concurrent:32}")
+    private int maxConcurrent;
+
+    @Value("${app.execute.per-agent-max:8}")
+    private int perAgentMax;
+
+    @Value("${app.execute.per-user-max:2}")
+    private int perUserMax;
+
+    @Value("${app.execute.max-queued:256}")
+    private int maxQueued;
+
+    @Value("${app.execute.queue-timeout-seconds:30}")
+    private long queueTimeoutSeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final LinkedList<Ticket> queue = new LinkedList<>();
+    private final Map<String, Integer> runningByAgent = new HashMap<>();
+    private final Map<String, Integer> runningByUser = new HashMap<>();
+    private int running;
+
+    private final MeterRegistry registry;
+    private final Timer waitTimer;
+
+    public ExecutionScheduler(MeterRegistry registry) {
+        this.registry = registry;
+        this.waitTimer = Timer.builder("filesecbox.execute.queue.wait")
+                .description("Time commands spent waiting for an execution slot")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("filesecbox.execute.running", this, s -> s.running)
+                .description("Commands currently executing").register(registry);
+        Gauge.builder("filesecbox.execute.queued", queue, List::size)
+                .description("Commands waiting for an execution slot").register(registry);
+    }
+
+    public <T> T run(String agentId, String userId, Callable<T> task) throws Exception {
+        Ticket ticket = new Ticket(agentId, agentId + "/" + userId);
+        acquire(ticket);
+        try {
+            return task.call();
+        } finally {
+            release(ticket);
+        }
+    }
+
+    /**
+     * 不排队地申请执行槽位：全局与租户配额均有余量、且没有可放行的同步排队请求时返回凭证，否则返回 null。
+     * 拿到的凭证必须通过 {@link #release} 归还。
+     */
+    public Ticket tryAcquire(String agentId, String userId) {
+        Ticket ticket = new Ticket(agentId, agentId + "/" + userId);
+        lock.lock();
+        try {
+            if (!admissible(ticket) || firstAdmissible() != null) return null;
+            grant(ticket);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(Ticket ticket) throws InterruptedException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.SECONDS.toNanos(queueTimeoutSeconds);
+        lock.lock();
+        try {
+            if (queue.isEmpty() && admissible(ticket)) {
+                grant(ticket);
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                reject(ticket, "queue_full");
+                throw new RuntimeException("Server busy: too many commands are waiting for execution, please retry later.");
+            }
+            queue.addLast(ticket);
+            try {
+                while (!(admissible(ticket) && firstAdmissible() == ticket)) {
+                    if (remaining <= 0) {
+                        reject(ticket, "timeout");
+                        throw new RuntimeException("Server busy: no execution slot available within " + queueTimeoutSeconds + " seconds.");
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+                grant(ticket);
+            } finally {
+                queue.remove(ticket);
+                // 队首变化后其他等待者可能已可放行
+                changed.signalAll();
+            }
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Ticket ticket) {
+        lock.lock();
+        try {
+            running--;
+            decrement(runningByAgent, ticket.agentKey);
+            decrement(runningByUser, ticket.userKey);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean admissible(Ticket ticket) {
+        return running < maxConcurrent
+                && runningByAgent.getOrDefault(ticket.agentKey, 0) < perAgentMax
+                && runningByUser.getOrDefault(ticket.userKey, 0) < perUserMax;
+    }
+
+    private Ticket firstAdmissible() {
+        for (Ticket waiting : queue) {
+            if (admissible(waiting)) return waiting;
+        }
+        return null;
+    }
+
+    private void grant(Ticket ticket) {
+        running++;
+        runningByAgent.merge(ticket.agentKey, 1, Integer::sum);
+        runningByUser.merge(ticket.userKey, 1, Integer::sum);
+    }
+
+    private void reject(Ticket ticket, String reason) {
+        Counter.builder("filesecbox.execute.rejected")
+                .description("Commands rejected by the execution scheduler")
+                .tag("reason", reason)
+                .register(registry).increment();
+        log.warn("Execution rejected ({}) for {}, running: {}, queued: {}", reason, ticket.userKey, running, queue.size());
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        counts.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    public static final class Ticket {
+        final String agentKey;
+        final String userKey;
+
+        Ticket(String agentKey, String userKey) {
+            this.agentKey = agentKey;
+            this.userKey = userKey;
+        }
+    }
+}
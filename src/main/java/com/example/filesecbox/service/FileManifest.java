@@ -0,0 +1,147 @@
+package com.example.filesecbox.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 目录清单：记录目录树下每个文件的相对路径、大小、修改时间与 SHA-256 摘要。
+ * 持久化为 properties 文件，重新扫描时大小与 mtime 均未变化的文件直接复用上次的摘要。
+ */
+public class FileManifest {
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry get(String relativePath) {
+        return entries.get(relativePath);
+    }
+
+    public void put(String relativePath, Entry entry) {
+        entries.put(relativePath, entry);
+    }
+
+    public void remove(String relativePath) {
+        entries.remove(relativePath);
+    }
+
+    /**
+     * 扫描目录树生成清单。previous 可为空；命中 (size, mtime) 的文件不再重新计算摘要。
+     */
+    public static FileManifest scan(Path root, FileManifest previous) throws IOException {
+        FileManifest manifest = new FileManifest();
+        if (!Files.isDirectory(root)) return manifest;
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                String rel = root.relativize(file).toString().replace('\\', '/');
+                long size = attrs.size();
+                long mtime = attrs.lastModifiedTime().toMillis();
+                Entry old = previous != null ? previous.get(rel) : null;
+                String sha = (old != null && old.size == size && old.mtime == mtime) ? old.sha256 : hash(file);
+                manifest.put(rel, new Entry(size, mtime, sha));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return manifest;
+    }
+
+    public static FileManifest load(Path file) throws IOException {
+        FileManifest manifest = new FileManifest();
+        if (!Files.exists(file)) return manifest;
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            props.load(is);
+        }
+        for (String key : props.stringPropertyNames()) {
+            String[] parts = props.getProperty(key).split(",");
+            if (parts.length == 3) {
+                manifest.put(key, new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+            }
+        }
+        return manifest;
+    }
+
+    public void store(Path file) throws IOException {
+        Properties props = new Properties();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry v = e.getValue();
+            props.setProperty(e.getKey(), v.size + "," + v.mtime + "," + v.sha256);
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            props.store(os, "File Manifest (size,mtime,sha256)");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 整个清单的内容摘要：仅由相对路径与文件摘要决定，与 mtime 无关。
+     */
+    public String digest() {
+        MessageDigest md = newDigest();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            md.update(e.getKey().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(e.getValue().sha256.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            md.update((byte) '\n');
+        }
+        return toHex(md.digest());
+    }
+
+    public static String hash(Path file) throws IOException {
+        MessageDigest md = newDigest();
+        byte[] buffer = new byte[65536];
+        try (InputStream is = Files.newInputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = hex[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = hex[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    public static class Entry {
+        private final long size;
+        private final long mtime;
+        private final String sha256;
+
+        public Entry(long size, long mtime, String sha256) {
+            this.size = size;
+            this.mtime = mtime;
+            this.sha256 = sha256;
+        }
+
+        public long getSize() { return size; }
+        public long getMtime() { return mtime; }
+        public String getSha256() { return sha256; }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.filesecbox.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多粒度锁管理：agent -> workspace -> path 三级节点，支持 IS / IX / S / X 四种模式。
+ * 子节点加锁前先在祖先节点上加意向锁，整棵子树的操作（如同步）直接在对应层级加 S / X。
+ * 节点按引用计数创建与回收，锁表大小只与当前活跃的加锁请求相关。
+ */
+public class HierarchicalLockManager {
+
+    public enum Mode { IS, IX, S, X }
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * 自上而下依次加锁；任一级超时则释放已获得的锁并返回 null。
+     */
+    public Held acquire(String[] keys, Mode[] modes, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Node[] acquired = new Node[keys.length];
+        int i = 0;
+        try {
+            for (; i < keys.length; i++) {
+                Node node = retain(keys[i]);
+                boolean ok;
+                try {
+                    ok = node.acquire(modes[i], deadline);
+                } catch (InterruptedException | RuntimeException e) {
+                    release(keys[i], node);
+                    throw e;
+                }
+                if (!ok) {
+                    release(keys[i], node);
+                    return null;
+                }
+                acquired[i] = node;
+            }
+            return new Held(keys, modes, acquired);
+        } finally {
+            if (i < keys.length) {
+                for (int j = i - 1; j >= 0; j--) {
+                    acquired[j].unlock(modes[j]);
+                    release(keys[j], acquired[j]);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private Node retain(String key) {
+        return nodes.compute(key, (k, n) -> {
+            Node node = n != null ? n : new Node();
+            node.refs++;
+            return node;
+        });
+    }
+
+    private void release(String key, Node node) {
+        nodes.computeIfPresent(key, (k, n) -> {
+            if (n != node) return n;
+            return --n.refs == 0 ? null : n;
+        });
+    }
+
+    /**
+     * 已持有的一组锁，按加锁的相反顺序释放。
+     */
+    public final class Held implements AutoCloseable {
+        private final String[] keys;
+        private final Mode[] modes;
+        private final Node[] nodes;
+
+        private Held(String[] keys, Mode[] modes, Node[] nodes) {
+            this.keys = keys;
+            this.modes = modes;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public void close() {
+            for (int i = nodes.length - 1; i >= 0; i--) {
+                nodes[i].unlock(modes[i]);
+                release(keys[i], nodes[i]);
+            }
+        }
+    }
+
+    private static final class Node {
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final Condition changed = mutex.newCondition();
+        private final int[] granted = new int[Mode.values().length];
+        private final Map<Thread, int[]> holders = new HashMap<>();
+        private int exclusiveWaiters;
+        // 由 nodes.compute 串行维护
+        private int refs;
+
+        boolean acquire(Mode mode, long deadline) throws InterruptedException {
+            mutex.lock();
+            boolean waitingExclusive = false;
+            try {
+                Thread me = Thread.currentThread();
+                while (!grantable(mode, me)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    if (mode == Mode.X && !waitingExclusive) {
+                        exclusiveWaiters++;
+                        waitingExclusive = true;
+                    }
+                    changed.awaitNanos(remaining);
+                }
+                granted[mode.ordinal()]++;
+                holders.computeIfAbsent(me, t -> new int[Mode.values().length])[mode.ordinal()]++;
+                return true;
+            } finally {
+                if (waitingExclusive) {
+                    exclusiveWaiters--;
+                    changed.signalAll();
+                }
+                mutex.unlock();
+            }
+        }
+
+        void unlock(Mode mode) {
+            mutex.lock();
+            try {
+                Thread me = Thread.currentThread();
+                int[] mine = holders.get(me);
+                if (mine == null || mine[mode.ordinal()] == 0) {
+                    throw new IllegalMonitorStateException("Lock not held: " + mode);
+                }
+                mine[mode.ordinal()]--;
+                granted[mode.ordinal()]--;
+                if (isEmpty(mine)) holders.remove(me);
+                changed.signalAll();
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private boolean grantable(Mode mode, Thread me) {
+            int[] mine = holders.get(me);
+            if (mine != null && mine[Mode.X.ordinal()] > 0) return true; // 独占持有者可重入任意模式
+            // 有独占请求排队时，新的共享请求让行，避免写饥饿（已持有锁的线程除外，防止自锁）
+            if (mode != Mode.X && exclusiveWaiters > 0 && mine == null) return false;
+            int is = others(Mode.IS, mine), ix = others(Mode.IX, mine), s = others(Mode.S, mine), x = others(Mode.X, mine);
+            switch (mode) {
+                case IS: return x == 0;
+                case IX: return s == 0 && x == 0;
+                case S: return ix == 0 && x == 0;
+                default: return is == 0 && ix == 0 && s == 0 && x == 0;
+            }
+        }
+
+        private int others(Mode mode, int[] mine) {
+            return granted[mode.ordinal()] - (mine != null ? mine[mode.ordinal()] : 0);
+        }
+
+        private static boolean isEmpty(int[] counts) {
+            for (int c : counts) {
+                if (c != 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.filesecbox.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 稀疏行偏移索引：每 STRIDE 行记录一次该行起始的字节偏移，按行号读取时直接定位到最近的检查点，
+ * 不必从文件开头逐行扫描。换行规则与 BufferedReader.readLine 一致（\n、\r、\r\n）。
+ * 索引带有源文件的 size / mtime，文件变化后视为失效。
+ */
+class LineIndex {
+    static final int STRIDE = 1024;
+
+    private static final int MAGIC = 0x4C494458; // "LIDX"
+
+    private final long size;
+    private final long mtime;
+    private final long[] checkpoints;
+
+    private LineIndex(long size, long mtime, long[] checkpoints) {
+        this.size = size;
+        this.mtime = mtime;
+        this.checkpoints = checkpoints;
+    }
+
+    boolean matches(BasicFileAttributes attrs) {
+        return attrs.size() == size && attrs.lastModifiedTime().toMillis() == mtime;
+    }
+
+    /**
+     * 返回不晚于 line (从 0 开始) 的最近检查点：[检查点行号, 字节偏移]
+     */
+    long[] seek(long line) {
+        int slot = (int) Math.min(line / STRIDE, checkpoints.length - 1);
+        return new long[]{(long) slot * STRIDE, checkpoints[slot]};
+    }
+
+    static LineIndex build(Path file, BasicFileAttributes attrs) throws IOException {
+        long[] checkpoints = new long[16];
+        int count = 1; // 第 0 行从偏移 0 开始
+        long line = 0;
+        long position = 0;
+        boolean pendingCr = false;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    position++;
+                    boolean lineEnd;
+                    if (b == '\n') {
+                        // \r\n 已在 \r 处计为一行
+                        lineEnd = !pendingCr;
+                        pendingCr = false;
+                        if (!lineEnd) {
+                            // 修正 \r 处记录的下一行起点
+                            if ((line % STRIDE) == 0 && checkpoints[count - 1] == position - 1) {
+                                checkpoints[count - 1] = position;
+                            }
+                            continue;
+                        }
+                    } else {
+                        lineEnd = b == '\r';
+                        pendingCr = lineEnd;
+                    }
+                    if (lineEnd) {
+                        line++;
+                        if (line % STRIDE == 0) {
+                            if (count == checkpoints.length) {
+                                long[] grown = new long[count * 2];
+                                System.arraycopy(checkpoints, 0, grown, 0, count);
+                                checkpoints = grown;
+                            }
+                            checkpoints[count++] = position;
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        long[] trimmed = new long[count];
+        System.arraycopy(checkpoints, 0, trimmed, 0, count);
+        return new LineIndex(attrs.size(), attrs.lastModifiedTime().toMillis(), trimmed);
+    }
+
+    static LineIndex load(Path indexFile) {
+        if (!Files.exists(indexFile)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != STRIDE) return null;
+            long size = in.readLong();
+            long mtime = in.readLong();
+            long[] checkpoints = new long[in.readInt()];
+            for (int i = 0; i < checkpoints.length; i++) {
+                checkpoints[i] = in.readLong();
+            }
+            return new LineIndex(size, mtime, checkpoints);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void store(Path indexFile) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(STRIDE);
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeInt(checkpoints.length);
+            for (long checkpoint : checkpoints) {
+                out.writeLong(checkpoint);
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
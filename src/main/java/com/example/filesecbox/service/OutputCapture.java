@@ -0,0 +1,133 @@
+package com.example.filesecbox.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 单个输出流 (stdout / stderr) 的有界捕获：内存中只保留开头与结尾各 maxBytes/2 字节，
+ * 超出部分连同开头一起写入溢出文件，因此溢出文件始终是完整输出，可通过 logId 事后获取。
+ * 调用方按字节块推送数据（{@link #accept}），结束时调用 {@link #finish}。
+ */
+class OutputCapture {
+    private final String stream;
+    private final Path spillFile;
+    private final Charset charset;
+    private final SkillExecutor.OutputListener listener;
+    private final CharsetDecoder decoder;
+
+    private final byte[] head;
+    private int headLen;
+    private final byte[] tail;
+    private int tailPos;
+    private int tailLen;
+    private long totalBytes;
+    private OutputStream spill;
+    private ByteBuffer pending;
+
+    OutputCapture(String stream, int maxBytes, Path spillFile, Charset charset, SkillExecutor.OutputListener listener) {
+        this.stream = stream;
+        this.spillFile = spillFile;
+        this.charset = charset;
+        this.listener = listener;
+        this.head = new byte[Math.max(1, maxBytes / 2)];
+        this.tail = new byte[Math.max(1, maxBytes - head.length)];
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    synchronized void accept(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) return;
+        totalBytes += len;
+        notifyListener(b, off, len);
+
+        int toHead = Math.min(len, head.length - headLen);
+        System.arraycopy(b, off, head, headLen, toHead);
+        headLen += toHead;
+        off += toHead;
+        len -= toHead;
+        if (len == 0) return;
+
+        if (spill == null) {
+            Files.createDirectories(spillFile.getParent());
+            spill = Files.newOutputStream(spillFile);
+            spill.write(head, 0, headLen);
+        }
+        spill.write(b, off, len);
+
+        // 尾部环形缓冲只保留最后 tail.length 字节
+        if (len >= tail.length) {
+            System.arraycopy(b, off + len - tail.length, tail, 0, tail.length);
+            tailPos = 0;
+            tailLen = tail.length;
+            return;
+        }
+        int first = Math.min(len, tail.length - tailPos);
+        System.arraycopy(b, off, tail, tailPos, first);
+        System.arraycopy(b, off + first, tail, 0, len - first);
+        tailPos = (tailPos + len) % tail.length;
+        tailLen = Math.min(tail.length, tailLen + len);
+    }
+
+    /**
+     * 结束捕获：关闭溢出文件；若输出未超出上限（头尾仍连续），删除溢出文件。
+     */
+    synchronized void finish() throws IOException {
+        if (spill != null) {
+            spill.close();
+            if (!isTruncated()) {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+        if (listener != null && pending != null && pending.hasRemaining()) {
+            listener.onOutput(stream, charset.decode(pending).toString());
+        }
+    }
+
+    synchronized boolean isTruncated() {
+        return totalBytes > headLen + tailLen;
+    }
+
+    synchronized String text(String marker) {
+        String headText = new String(head, 0, headLen, charset);
+        byte[] ordered = new byte[tailLen];
+        int start = (tailPos - tailLen + tail.length) % tail.length;
+        int first = Math.min(tailLen, tail.length - start);
+        System.arraycopy(tail, start, ordered, 0, first);
+        System.arraycopy(tail, 0, ordered, first, tailLen - first);
+        String tailText = new String(ordered, charset);
+        if (!isTruncated()) {
+            return (headText + tailText).trim();
+        }
+        long omitted = totalBytes - headLen - tailLen;
+        return headText + "\n" + String.format(marker, omitted) + "\n" + tailText.trim();
+    }
+
+    private void notifyListener(byte[] b, int off, int len) {
+        if (listener == null) return;
+        ByteBuffer in;
+        if (pending != null && pending.hasRemaining()) {
+            in = ByteBuffer.allocate(pending.remaining() + len);
+            in.put(pending).put(b, off, len);
+            in.flip();
+        } else {
+            in = ByteBuffer.wrap(b, off, len);
+        }
+        CharBuffer out = CharBuffer.allocate(in.remaining());
+        decoder.decode(in, out, false);
+        out.flip();
+        if (out.hasRemaining()) {
+            listener.onOutput(stream, out.toString());
+        }
+        // 跨块截断的多字节字符留到下一块拼接
+        pending = in.hasRemaining() ? ByteBuffer.wrap(Arrays.copyOfRange(in.array(), in.arrayOffset() + in.position(), in.arrayOffset() + in.limit())) : null;
+    }
+}
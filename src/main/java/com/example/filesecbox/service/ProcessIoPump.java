@@ -0,0 +1,166 @@
+package com.example.filesecbox.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 共享的进程输出泵：少量常驻线程轮询所有运行中进程的 stdout / stderr，
+ * 只读取 available() 范围内的数据，因此单个线程不会阻塞在某个进程上，可同时服务大量进程。
+ * 空闲时指数退避休眠，有新注册或读到数据时立即恢复。
+ */
+@Component
+public class ProcessIoPump {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ProcessIoPump.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Value("${app.execute.io.pump-threads:2}")
+    private int pumpThreads;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < Math.max(1, pumpThreads); i++) {
+            Worker worker = new Worker();
+            Thread thread = new Thread(worker, "process-io-pump-" + (i + 1));
+            thread.setDaemon(true);
+            worker.thread = thread;
+            workers.add(worker);
+            thread.start();
+        }
+        log.info("Process I/O pump started with {} thread(s)", workers.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * 注册一个进程输出流，返回的 Drain 在流读到结尾（或进程退出且缓冲读空）时完成。
+     */
+    public Drain register(Process process, InputStream in, OutputCapture capture) {
+        Source source = new Source(process, in, capture);
+        Worker worker = workers.get(Math.floorMod(next.getAndIncrement(), workers.size()));
+        worker.incoming.add(source);
+        LockSupport.unpark(worker.thread);
+        return source.drain;
+    }
+
+    public static final class Drain {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        void complete() {
+            done.countDown();
+        }
+
+        public boolean await(long timeoutMillis) throws InterruptedException {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Source {
+        final Process process;
+        final InputStream in;
+        final OutputCapture capture;
+        final Drain drain = new Drain();
+
+        Source(Process process, InputStream in, OutputCapture capture) {
+            this.process = process;
+            this.in = in;
+            this.capture = capture;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+            drain.complete();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final Queue<Source> incoming = new ConcurrentLinkedQueue<>();
+        final List<Source> active = new ArrayList<>();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        volatile Thread thread;
+
+        @Override
+        public void run() {
+            long idleNanos = MIN_IDLE_NANOS;
+            while (running) {
+                Source added;
+                while ((added = incoming.poll()) != null) {
+                    active.add(added);
+                }
+                boolean progressed = false;
+                Iterator<Source> it = active.iterator();
+                while (it.hasNext()) {
+                    Source source = it.next();
+                    int state = pumpOnce(source);
+                    if (state < 0) {
+                        source.close();
+                        it.remove();
+                    } else if (state > 0) {
+                        progressed = true;
+                    }
+                }
+                if (progressed) {
+                    idleNanos = MIN_IDLE_NANOS;
+                } else {
+                    LockSupport.parkNanos(this, active.isEmpty() ? MAX_IDLE_NANOS * 100 : idleNanos);
+                    idleNanos = Math.min(MAX_IDLE_NANOS, idleNanos * 2);
+                }
+            }
+            for (Source source : active) {
+                source.close();
+            }
+        }
+
+        /**
+         * @return 1 读到数据；0 暂无数据；-1 流已结束
+         */
+        private int pumpOnce(Source source) {
+            try {
+                int available = source.in.available();
+                if (available == 0) {
+                    if (source.process.isAlive()) return 0;
+                    // 进程已退出：剩余输出已被缓冲，再确认一次后即可结束
+                    available = source.in.available();
+                    if (available == 0) return -1;
+                }
+                int n = source.in.read(buffer, 0, Math.min(available, buffer.length));
+                if (n < 0) return -1;
+                source.capture.accept(buffer, 0, n);
+                return 1;
+            } catch (IOException e) {
+                return -1;
+            } catch (RuntimeException e) {
+                log.warn("Output listener failed, stop pumping stream", e);
+                return -1;
+            }
+        }
+    }
+}
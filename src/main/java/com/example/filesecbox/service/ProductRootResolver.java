@@ -0,0 +1,33 @@
+package com.example.filesecbox.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 产品根目录解析：按操作系统选用 app.product.root.win / app.product.root.linux，返回规范化的绝对路径。
+ */
+@Component
+public class ProductRootResolver {
+
+    @Value("${app.product.root.win:D:/webIde/product}")
+    private String productRootWin;
+
+    @Value("${app.product.root.linux:/webIde/product}")
+    private String productRootLinux;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() {
+        boolean isWin = System.getProperty("os.name").toLowerCase().contains("win");
+        root = Paths.get(isWin ? productRootWin : productRootLinux).toAbsolutePath().normalize();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+}
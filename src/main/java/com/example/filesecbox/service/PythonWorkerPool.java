@@ -0,0 +1,318 @@
+package com.example.filesecbox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常驻 Python 解释器池 (可选)：按工作区维护预热的 Python 进程，
+ * 形如 {@code python3 skills/x/run.py arg...} 的简单指令直接交给空闲进程 fork 执行，省去解释器启动与模块导入开销。
+ * 工作进程以工作区根目录为 cwd，环境变量与普通执行一致地净化；执行 N 次或出错后回收。
+ * 没有空闲进程且已达上限时返回 null，由调用方回退到普通的 bash 执行。
+ */
+@Component
+public class PythonWorkerPool {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    private static final int FRAME_EXIT = 0;
+    private static final int FRAME_STDOUT = 1;
+    private static final int FRAME_STDERR = 2;
+    private static final int FRAME_TIMEOUT = 3;
+
+    // 可交给常驻进程执行的参数：不含任何 shell 元字符
+    private static final String SHELL_META = "><|&;$`()\\'*?~{}[]!#\n\r";
+
+    @Value("${app.execute.python-pool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.execute.python-pool.size:2}")
+    private int poolSize;
+
+    @Value("${app.execute.python-pool.max-runs:50}")
+    private int maxRuns;
+
+    @Value("${app.execute.python-pool.idle-seconds:600}")
+    private long idleSeconds;
+
+    // 工作进程启动时预先导入的模块 (逗号分隔)
+    @Value("${app.execute.python-pool.preload:}")
+    private String preload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private String bootstrap;
+
+    // 兜底看门狗：工作进程自身未能按时上报超时时强制结束
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "python-worker-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) return;
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            log.warn("Python worker pool requires fork(), disabled on Windows");
+            enabled = false;
+            return;
+        }
+        try (InputStream in = new ClassPathResource("python/warm_worker.py").getInputStream()) {
+            bootstrap = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("Failed to load python worker bootstrap, pool disabled", e);
+            enabled = false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        for (Pool pool : pools.values()) {
+            pool.closeAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 解析可由常驻进程执行的指令：{@code python|python3 skills/.../*.py [简单参数...]}，否则返回 null。
+     */
+    public Invocation parse(String commandLine) {
+        String trimmed = commandLine.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (SHELL_META.indexOf(trimmed.charAt(i)) >= 0) return null;
+        }
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = null;
+        boolean quoted = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (current == null) current = new StringBuilder();
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (current != null) {
+                    tokens.add(current.toString());
+                    current = null;
+                }
+            } else {
+                if (current == null) current = new StringBuilder();
+                current.append(c);
+            }
+        }
+        if (quoted) return null;
+        if (current != null) tokens.add(current.toString());
+        if (tokens.size() < 2) return null;
+        String interpreter = tokens.get(0);
+        String script = tokens.get(1);
+        if (!("python".equals(interpreter) || "python3".equals(interpreter))
+                || !script.startsWith("skills/") || !script.endsWith(".py")) {
+            return null;
+        }
+        return new Invocation(interpreter, script, tokens.subList(2, tokens.size()));
+    }
+
+    /**
+     * 在工作区的常驻进程中执行，输出写入给定的捕获器。
+     * @return 退出码；没有可用的工作进程时返回 null
+     */
+    public Integer run(Path workingDir, Invocation invocation, OutputCapture stdout, OutputCapture stderr, int timeoutSeconds) throws IOException {
+        String key = workingDir.toAbsolutePath().normalize() + "|" + invocation.interpreter;
+        Pool pool = pools.computeIfAbsent(key, k -> new Pool(k, workingDir, invocation.interpreter));
+        Worker worker = pool.borrow();
+        if (worker == null) return null;
+
+        boolean healthy = false;
+        ScheduledFuture<?> kill = watchdog.schedule(worker.process::destroyForcibly, timeoutSeconds + 10L, TimeUnit.SECONDS);
+        try {
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("script", invocation.script);
+            request.put("argv", invocation.args);
+            request.put("timeout", timeoutSeconds);
+            worker.stdin.write(objectMapper.writeValueAsBytes(request));
+            worker.stdin.write('\n');
+            worker.stdin.flush();
+
+            while (true) {
+                int kind = worker.stdout.read();
+                if (kind < 0) {
+                    throw new IOException("Python worker exited unexpectedly.");
+                }
+                int length = worker.stdout.readInt();
+                byte[] data = new byte[length];
+                worker.stdout.readFully(data);
+                if (kind == FRAME_STDOUT) {
+                    stdout.accept(data, 0, length);
+                } else if (kind == FRAME_STDERR) {
+                    stderr.accept(data, 0, length);
+                } else if (kind == FRAME_TIMEOUT) {
+                    healthy = true;
+                    throw new RuntimeException("Execution Timeout: Process killed after " + timeoutSeconds + " seconds.");
+                } else if (kind == FRAME_EXIT) {
+                    healthy = true;
+                    return new DataInputStream(new ByteArrayInputStream(data)).readInt();
+                } else {
+                    throw new IOException("Unexpected frame from python worker: " + kind);
+                }
+            }
+        } finally {
+            kill.cancel(false);
+            pool.giveBack(worker, healthy);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleWorkers() {
+        if (!enabled) return;
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        pools.values().forEach(pool -> pool.evictIdle(cutoff));
+        pools.values().removeIf(Pool::isEmpty);
+    }
+
+    /**
+     * 工作区被清理时关闭其全部常驻进程；正在执行的进程结束后不再归还 (池已移除)，随即被回收。
+     */
+    public void evict(Path workingDir) {
+        String prefix = workingDir.toAbsolutePath().normalize() + "|";
+        Iterator<Map.Entry<String, Pool>> it = pools.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Pool> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                it.remove();
+                entry.getValue().closeAll();
+            }
+        }
+    }
+
+    public static final class Invocation {
+        private final String interpreter;
+        private final String script;
+        private final List<String> args;
+
+        Invocation(String interpreter, String script, List<String> args) {
+            this.interpreter = interpreter;
+            this.script = script;
+            this.args = new ArrayList<>(args);
+        }
+    }
+
+    private final class Pool {
+        final String key;
+        final Path workingDir;
+        final String interpreter;
+        final Deque<Worker> idle = new ConcurrentLinkedDeque<>();
+        final AtomicInteger total = new AtomicInteger();
+
+        Pool(String key, Path workingDir, String interpreter) {
+            this.key = key;
+            this.workingDir = workingDir;
+            this.interpreter = interpreter;
+        }
+
+        Worker borrow() {
+            Worker worker;
+            while ((worker = idle.pollFirst()) != null) {
+                if (worker.process.isAlive()) return worker;
+                discard(worker);
+            }
+            if (total.incrementAndGet() > poolSize) {
+                total.decrementAndGet();
+                return null;
+            }
+            try {
+                return start();
+            } catch (IOException e) {
+                total.decrementAndGet();
+                log.warn("Failed to start python worker in {}: {}", workingDir, e.getMessage());
+                return null;
+            }
+        }
+
+        void giveBack(Worker worker, boolean healthy) {
+            worker.runs++;
+            worker.lastUsed = System.currentTimeMillis();
+            // 池已被空闲清理移除时不再归还，避免工作进程游离在池外
+            if (healthy && worker.runs < maxRuns && worker.process.isAlive() && pools.get(key) == this) {
+                idle.offerFirst(worker);
+            } else {
+                discard(worker);
+            }
+        }
+
+        void evictIdle(long cutoff) {
+            Iterator<Worker> it = idle.iterator();
+            while (it.hasNext()) {
+                Worker worker = it.next();
+                if (worker.lastUsed < cutoff && idle.removeFirstOccurrence(worker)) {
+                    discard(worker);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return total.get() == 0;
+        }
+
+        void closeAll() {
+            Worker worker;
+            while ((worker = idle.pollFirst()) != null) {
+                discard(worker);
+            }
+        }
+
+        private Worker start() throws IOException {
+            List<String> command = new ArrayList<>(Arrays.asList(interpreter, "-u", "-c", bootstrap));
+            if (!preload.trim().isEmpty()) {
+                for (String module : preload.split(",")) {
+                    if (!module.trim().isEmpty()) command.add(module.trim());
+                }
+            }
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.directory(workingDir.toFile());
+            pb.redirectError(ProcessBuilder.Redirect.to(new File("/dev/null")));
+            SkillExecutor.scrubEnvironment(pb.environment());
+            Process process = pb.start();
+            log.info("Started python worker for {}", workingDir);
+            return new Worker(process);
+        }
+
+        private void discard(Worker worker) {
+            total.decrementAndGet();
+            worker.process.destroyForcibly();
+        }
+    }
+
+    private static final class Worker {
+        final Process process;
+        final OutputStream stdin;
+        final DataInputStream stdout;
+        int runs;
+        long lastUsed = System.currentTimeMillis();
+
+        Worker(Process process) {
+            this.process = process;
+            this.stdin = new BufferedOutputStream(process.getOutputStream());
+            this.stdout = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+    }
+}
@@ -7,9 +7,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -17,44 +17,88 @@ import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipFile;
 
 @Service
 public class SandboxService {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SandboxService.class);
 
-    @Value("${app.product.root.win:D:/webIde/product}")
-    private String productRootWin;
-
-    @Value("${app.product.root.linux:/webIde/product}")
-    private String productRootLinux;
-
     @Value("${app.skill.creator.url:}")
     private String skillCreatorUrl;
 
+    // 工作区供给模式：copy（全量物理拷贝）、link（硬链接写时复制）或 overlay（按需物化，未修改的路径直接读基线）
+    @Value("${app.workspace.provision.mode:copy}")
+    private String provisionMode;
+
     private Path productRoot;
     private static final String BASELINE_DIR = "baseline";
     private static final String WORKSPACES_DIR = "workspaces";
     private static final String META_DIR = ".meta";
+    private static final String MANIFESTS_DIR = ".manifests";
+    private static final String STAGING_DIR = ".staging";
+    private static final String ARCHIVE_CACHE_DIR = ".archive-cache";
+    private static final String NORMALIZED_MARKER = "skills_normalized.properties";
     private static final String SKILL_CREATOR_DIR = "skill-creator";
 
+    @Autowired
+    private ProductRootResolver productRootResolver;
+
     @Autowired
     private StorageService storageService;
 
     @Autowired
     private SkillExecutor skillExecutor;
 
+    @Autowired
+    private ExecutionScheduler executionScheduler;
+
+    @Autowired
+    private CommandValidator commandValidator;
+
+    @Autowired
+    private ExecutionResultCache resultCache;
+
+    @Autowired
+    private ContentReader contentReader;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private SkillIndex skillIndex;
+
+    @Autowired
+    private SkillArchiver skillArchiver;
+
+    @Autowired
+    private WorkspaceFileIndex fileIndex;
+
+    @Autowired
+    private WorkspaceSearchIndex searchIndex;
+
+    @Autowired
+    private PythonWorkerPool pythonWorkerPool;
+
+    @Autowired
+    private WorkspaceOverlay overlay;
+
+    @Autowired
+    private SkillNormalizer normalizer;
+
+    // 工作区 .meta/skills_sync.properties 的内存副本，仅由本服务写入
+    private final Map<Path, Properties> syncMetaCache = new java.util.concurrent.ConcurrentHashMap<>();
+    // 已确认完成供给的工作区 / 已建好目录的基线 -> 确认时的供给代数；代数不一致即视为失效，稳态请求不再访问文件系统
+    private final Map<Path, Long> provisionedRoots = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.concurrent.atomic.AtomicLong provisionGeneration = new java.util.concurrent.atomic.AtomicLong();
+    private volatile SkillIndex.SkillEntry creatorEntry;
+    private volatile boolean creatorResolved;
+
     @PostConstruct
     public void init() throws IOException {
-        String os = System.getProperty("os.name").toLowerCase();
-        String finalPath = os.contains("win") ? productRootWin : productRootLinux;
-        
-        this.productRoot = Paths.get(finalPath).toAbsolutePath().normalize();
+        this.productRoot = productRootResolver.getRoot();
         Files.createDirectories(productRoot);
         log.info("Sandbox Service initialized with product root: {}", productRoot);
 
@@ -77,20 +121,13 @@ public class SandboxService {
             conn.setReadTimeout(30000);
             
             if (conn.getResponseCode() == 200) {
+                Path zipPath;
                 try (java.io.InputStream is = conn.getInputStream()) {
-                    byte[] data = storageService.readAllBytesFromInputStream(is);
-                    
+                    zipPath = storageService.spoolToTempFile(is, "skill-creator-");
+                }
+                try (ZipFile zip = new ZipFile(zipPath.toFile(), detectZipCharset(zipPath))) {
                     // 自动识别 zip 内是否存在唯一的根目录并剥离
-                    String commonRoot = null;
-                    try {
-                        commonRoot = detectCommonRoot(data, StandardCharsets.UTF_8);
-                    } catch (IllegalArgumentException e) {
-                        if (e.getMessage() != null && e.getMessage().contains("MALFORMED")) {
-                            commonRoot = detectCommonRoot(data, Charset.forName("GBK"));
-                        } else {
-                            throw e;
-                        }
-                    }
+                    String commonRoot = detectCommonRoot(zip);
 
                     // 启动时覆盖逻辑：如果目录已存在，先删除
                     if (Files.exists(creatorDir)) {
@@ -99,15 +136,9 @@ public class SandboxService {
                     }
 
                     Files.createDirectories(creatorDir);
-                    try {
-                        try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), StandardCharsets.UTF_8)) {
-                            extractZip(zis, creatorDir, commonRoot);
-                        }
-                    } catch (IllegalArgumentException e) {
-                        try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), Charset.forName("GBK"))) {
-                            extractZip(zis, creatorDir, commonRoot);
-                        }
-                    }
+                    extractZip(zip, creatorDir, commonRoot);
+                } finally {
+                    Files.deleteIfExists(zipPath);
                 }
                 log.info("Skill-Creator refreshed successfully to: {}", creatorDir);
             }
@@ -116,25 +147,40 @@ public class SandboxService {
         }
     }
 
-    private String detectCommonRoot(byte[] data, Charset charset) throws IOException {
+    /**
+     * 识别 zip 条目名编码：通过中央目录按 UTF-8 解析全部条目名，失败则回退 GBK（Windows 压缩工具的常见编码）。
+     */
+    private Charset detectZipCharset(Path zipPath) throws IOException {
+        try (ZipFile zip = new ZipFile(zipPath.toFile(), StandardCharsets.UTF_8)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                entries.nextElement();
+            }
+            return StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException | java.util.zip.ZipException e) {
+            log.info("Zip entry names are not valid UTF-8, falling back to GBK: {}", e.getMessage());
+            return Charset.forName("GBK");
+        }
+    }
+
+    private String detectCommonRoot(ZipFile zip) {
         String commonRoot = null;
-        try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), charset)) {
-            ZipEntry entry;
-            boolean first = true;
-            while ((entry = zis.getNextEntry()) != null) {
-                String name = entry.getName().replace('\\', '/');
-                if (name.isEmpty() || name.equals("/")) continue;
-                int slashIdx = name.indexOf('/');
-                if (slashIdx == -1) {
-                    if (!entry.isDirectory()) { commonRoot = null; break; } // 根目录下有文件
-                    String root = name;
-                    if (first) { commonRoot = root; first = false; }
-                    else if (!root.equals(commonRoot)) { commonRoot = null; break; }
-                } else {
-                    String root = name.substring(0, slashIdx);
-                    if (first) { commonRoot = root; first = false; }
-                    else if (!root.equals(commonRoot)) { commonRoot = null; break; }
-                }
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        boolean first = true;
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName().replace('\\', '/');
+            if (name.isEmpty() || name.equals("/")) continue;
+            int slashIdx = name.indexOf('/');
+            if (slashIdx == -1) {
+                if (!entry.isDirectory()) { commonRoot = null; break; } // 根目录下有文件
+                String root = name;
+                if (first) { commonRoot = root; first = false; }
+                else if (!root.equals(commonRoot)) { commonRoot = null; break; }
+            } else {
+                String root = name.substring(0, slashIdx);
+                if (first) { commonRoot = root; first = false; }
+                else if (!root.equals(commonRoot)) { commonRoot = null; break; }
             }
         }
         return commonRoot;
@@ -142,17 +188,42 @@ public class SandboxService {
 
     private Path getBaselineRoot(String agentId) {
         Path baselineRoot = productRoot.resolve(agentId).resolve(BASELINE_DIR).normalize();
+        if (isProvisioned(baselineRoot)) return baselineRoot;
+        long generation = provisionGeneration.get();
         try {
             Files.createDirectories(baselineRoot.resolve("skills"));
             Files.createDirectories(baselineRoot.resolve("files"));
+            // 从未整体检查过的基线 (如旧版本遗留数据) 补做一次打平，此后只在内容进入时检查
+            Path marker = baselineNormalizedMarker(agentId);
+            if (!normalizer.hasMarker(marker)) {
+                normalizeSkills(baselineRoot.resolve("skills"), marker, null);
+            }
         } catch (IOException e) {
             throw new RuntimeException("Failed to create baseline directories", e);
         }
+        provisionedRoots.put(baselineRoot, generation);
         return baselineRoot;
     }
 
     private Path getWorkspaceRoot(String userId, String agentId) {
         Path workspaceRoot = productRoot.resolve(agentId).resolve(WORKSPACES_DIR).resolve(userId).normalize();
+        if (isProvisioned(workspaceRoot)) return workspaceRoot;
+        // 先取代数再检查：检查期间若发生清理，记录下的旧代数会直接失效
+        long generation = provisionGeneration.get();
+        if (isOverlay()) {
+            // overlay：工作区只是基线之上的可写层，首次访问只建空目录，不做任何拷贝
+            if (!Files.isDirectory(workspaceRoot.resolve(META_DIR))) {
+                try {
+                    Files.createDirectories(workspaceRoot.resolve("skills"));
+                    Files.createDirectories(workspaceRoot.resolve("files"));
+                    Files.createDirectories(workspaceRoot.resolve(META_DIR));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to initialize user workspace", e);
+                }
+            }
+            provisionedRoots.put(workspaceRoot, generation);
+            return workspaceRoot;
+        }
         Path skillsDir = workspaceRoot.resolve("skills");
         try {
             if (!Files.exists(workspaceRoot) || !Files.exists(skillsDir) || isDirectoryEmpty(skillsDir)) {
@@ -162,9 +233,22 @@ public class SandboxService {
             log.error("Failed to check workspace status, triggering sync anyway", e);
             syncWorkspaceFromBaseline(userId, agentId);
         }
+        provisionedRoots.put(workspaceRoot, generation);
         return workspaceRoot;
     }
 
+    private boolean isProvisioned(Path root) {
+        Long generation = provisionedRoots.get(root);
+        return generation != null && generation == provisionGeneration.get();
+    }
+
+    /**
+     * 工作区内容可能被整体删除 (删除文件、执行指令) 后调用，下次访问重新检查并按需从基线供给。
+     */
+    private void invalidateProvisioning(Path workspaceRoot) {
+        provisionedRoots.remove(workspaceRoot);
+    }
+
     private boolean isDirectoryEmpty(Path path) throws IOException {
         if (Files.isDirectory(path)) {
             try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
@@ -181,16 +265,13 @@ public class SandboxService {
         try {
             log.info("Syncing workspace for user: {} agent: {}", userId, agentId);
             Files.createDirectories(workspaceRoot);
-            
-            // --- 物理压缩处理 (基线层 A/A -> A) ---
-            flattenAllSkills(baselineRoot.resolve("skills"));
 
             if (Files.exists(baselineRoot)) {
-                FileSystemUtils.copyRecursively(baselineRoot.toFile(), workspaceRoot.toFile());
+                provisionTree(baselineRoot, workspaceRoot);
             }
             
             // --- 物理压缩处理 (工作空间层 A/A -> A) ---
-            flattenAllSkills(workspaceRoot.resolve("skills"));
+            normalizeSkills(workspaceRoot.resolve("skills"), workspaceRoot.resolve(META_DIR).resolve(NORMALIZED_MARKER), null);
 
             // 兜底：确保工作区下的核心目录一定存在，防止基线拷贝不完整
             Files.createDirectories(workspaceRoot.resolve("skills"));
@@ -213,6 +294,9 @@ public class SandboxService {
                     }
                 }
             }
+            skillIndex.invalidate(wsSkillsDir);
+            fileIndex.invalidate(workspaceRoot);
+            searchIndex.invalidate(workspaceRoot);
             
         } catch (IOException e) {
             log.error("Failed to sync workspace", e);
@@ -220,32 +304,200 @@ public class SandboxService {
         }
     }
 
-    private void flattenAllSkills(Path skillsDir) {
-        if (!Files.exists(skillsDir)) return;
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(skillsDir)) {
-            for (Path skillEntry : stream) {
-                if (Files.isDirectory(skillEntry)) {
-                    physicallyFlattenSkill(skillEntry, skillEntry.getFileName().toString());
+    /**
+     * 基线 -> 工作区的目录供给：link 模式时构建硬链接树（O(inode)），否则全量拷贝。
+     */
+    private void provisionTree(Path source, Path target) throws IOException {
+        if (sharesInodes()) {
+            storageService.linkRecursively(source, target);
+        } else {
+            FileSystemUtils.copyRecursively(source.toFile(), target.toFile());
+        }
+    }
+
+    /**
+     * 工作区是否与基线共享 inode。启用 blob 存储时基线文件即 blob，工作区经由基线链接到全产品共享的 inode，
+     * 隔离方式与普通 link 模式相同：覆写前断链 (unshare)，指令执行前物化私有副本 (detachForCommand)。
+     */
+    private boolean sharesInodes() {
+        return "link".equalsIgnoreCase(provisionMode);
+    }
+
+    private boolean isOverlay() {
+        return "overlay".equalsIgnoreCase(provisionMode);
+    }
+
+    /**
+     * overlay 模式：把单元 (skills/&lt;name&gt; 或 files) 中仍回落到基线的文件补齐到工作区，此后该单元以工作区为准。
+     * 已被删除标记覆盖的路径不补齐；工作区已有的文件保持不变。
+     */
+    private void materialize(Path workspaceRoot, String agentId, String unit) throws IOException {
+        if (!isOverlay() || unit == null || overlay.isMaterialized(workspaceRoot, unit)) return;
+        Path upper = workspaceRoot.resolve(unit);
+        boolean untouched = !Files.exists(upper) && !overlay.hasWhiteouts(workspaceRoot, unit);
+        Predicate<String> lowerVisible = overlay.lowerFilter(workspaceRoot);
+        Path lower = getBaselineRoot(agentId).resolve(unit);
+        if (!Files.exists(upper) && !Files.isDirectory(lower)) return;
+        int count = 0;
+        if (lowerVisible.test(unit)) {
+            count = storageService.provisionMissing(lower, upper, sharesInodes(),
+                    rel -> !lowerVisible.test(unit + "/" + rel));
+        }
+        overlay.markMaterialized(workspaceRoot, unit);
+        log.info("Materialized {} into workspace {} ({} files)", unit, workspaceRoot, count);
+        if (untouched && unit.startsWith("skills/") && Files.isDirectory(upper)) {
+            // 与基线完全一致的副本：对齐目录 mtime 与同步元数据，状态保持 UNCHANGED
+            updateWorkspaceMetaForSkill(workspaceRoot, agentId, unit.substring("skills/".length()));
+        } else {
+            skillIndex.invalidate(workspaceRoot.resolve("skills"));
+            fileIndex.invalidate(workspaceRoot);
+            searchIndex.invalidate(workspaceRoot);
+        }
+    }
+
+    /**
+     * 基线内容变化后使其清单与检索索引失效 (overlay 模式下工作区读取会回落到这些索引)。
+     */
+    private void onBaselineChanged(String agentId) {
+        Path baselineRoot = getBaselineRoot(agentId);
+        fileIndex.invalidate(baselineRoot);
+        searchIndex.invalidate(baselineRoot);
+    }
+
+    private Path baselineManifestFile(String agentId, String skillName) {
+        return productRoot.resolve(agentId).resolve(MANIFESTS_DIR).resolve(skillName + ".properties");
+    }
+
+    private Path workspaceManifestFile(Path workspaceRoot, String skillName) {
+        return workspaceRoot.resolve(META_DIR).resolve(MANIFESTS_DIR).resolve(skillName + ".properties");
+    }
+
+    /**
+     * 基线 -> 工作区的技能增量同步：摘要取自两侧持久化清单，只有变化过的文件才重新计算。
+     * 基线清单在此只读 (只在 agent 写锁内由 indexBaselineSkill 持久化)，工作区清单同步后写回。
+     */
+    private SyncReport syncSkillToWorkspace(String agentId, String skillName, Path workspaceRoot) throws IOException {
+        Path blSkill = getBaselineRoot(agentId).resolve("skills").resolve(skillName);
+        Path wsManifestFile = workspaceManifestFile(workspaceRoot, skillName);
+        FileManifest wsManifest = FileManifest.load(wsManifestFile);
+        SyncReport report = storageService.syncTree(blSkill, FileManifest.load(baselineManifestFile(agentId, skillName)),
+                workspaceRoot.resolve("skills").resolve(skillName), wsManifest, sharesInodes());
+        wsManifest.store(wsManifestFile);
+        return report;
+    }
+
+    /**
+     * 基线技能入库：刷新并持久化技能清单 (只重新计算变化文件的摘要)，启用 blob 存储时同时收敛到内容寻址存储。
+     */
+    private void indexBaselineSkill(String agentId, String skillName) throws IOException {
+        Path skillDir = getBaselineRoot(agentId).resolve("skills").resolve(skillName);
+        Path manifestFile = baselineManifestFile(agentId, skillName);
+        if (Files.isDirectory(skillDir)) {
+            FileManifest previous = FileManifest.load(manifestFile);
+            FileManifest manifest = blobStore.isEnabled() ? blobStore.internTree(skillDir, previous) : FileManifest.scan(skillDir, previous);
+            manifest.store(manifestFile);
+        } else {
+            Files.deleteIfExists(manifestFile);
+        }
+    }
+
+    /**
+     * 指令执行前的写时复制：将整个工作区 (skills 与 files) 中仍与基线共享的文件物化为私有副本。
+     * 脚本可能原地写入指令中未出现的路径（如 python3 skills/A/run.py 内部 open('files/out.csv', 'a')），
+     * 只按指令引用的路径断链无法阻止写入穿透到基线与其他工作区。已断链的文件链接数为 1，再次执行时只做一次遍历。
+     */
+    private void detachForCommand(Path workspaceRoot) throws IOException {
+        storageService.detachHardLinks(workspaceRoot.resolve("skills"));
+        storageService.detachHardLinks(workspaceRoot.resolve("files"));
+    }
+
+    /**
+     * overlay 模式的指令执行前准备：只把指令引用到的技能 (或 files) 补齐到工作区，其余技能继续回落到基线。
+     * 引用整个 skills 目录 (或带通配符) 时补齐全部基线技能。
+     */
+    private void materializeForCommand(Path workspaceRoot, String agentId, String userId, String command) throws IOException {
+        Set<String> units = new LinkedHashSet<>();
+        for (Path target : commandTargets(workspaceRoot, command)) {
+            if (!target.startsWith(workspaceRoot)) continue;
+            String logical = workspaceRoot.relativize(target).toString().replace('\\', '/');
+            if (logical.equals("skills")) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(getBaselineRoot(agentId).resolve("skills"))) {
+                    for (Path skill : stream) {
+                        if (Files.isDirectory(skill)) units.add("skills/" + skill.getFileName());
+                    }
                 }
+            } else if (WorkspaceOverlay.unitOf(logical) != null) {
+                units.add(WorkspaceOverlay.unitOf(logical));
             }
-        } catch (IOException e) {
-            log.warn("Failed to scan skills for flattening: {}", skillsDir, e);
         }
+        if (units.isEmpty()) return;
+        storageService.workspaceWriteLocked("materialize", agentId, userId, () -> {
+            for (String unit : units) {
+                materialize(workspaceRoot, agentId, unit);
+            }
+        });
     }
 
-    private void physicallyFlattenSkill(Path skillDir, String skillName) {
-        Path nested = isRedundantDirectory(skillDir, skillName);
-        if (nested != null) {
-            try {
-                log.info("Physically flattening redundant directory: {}/{}", skillName, skillName);
-                Path tempDir = skillDir.getParent().resolve(skillName + "_tmp_" + System.currentTimeMillis());
-                Files.move(nested, tempDir);
-                storageService.deleteRecursively(skillDir.toFile().toPath());
-                Files.move(tempDir, skillDir);
-            } catch (IOException e) {
-                log.error("Failed to physically flatten directory: {}", skillDir, e);
+    /**
+     * 指令引用到的技能名；引用整个 skills 目录 (或带通配符) 时返回 null，表示全部技能。
+     */
+    private Set<String> commandSkills(Path workspaceRoot, String command) {
+        Path skillsDir = workspaceRoot.resolve("skills");
+        Set<String> names = new HashSet<>();
+        for (Path target : commandTargets(workspaceRoot, command)) {
+            if (target.equals(skillsDir)) return null;
+            if (skillsDir.equals(target.getParent())) names.add(target.getFileName().toString());
+        }
+        return names;
+    }
+
+    /**
+     * 指令中引用到的工作区路径：技能目录 (skills/&lt;name&gt;)、整个 skills、files 下的具体路径或整个 files。
+     * 路径片段取自 CommandValidator 的解析结果，与安全校验使用同一套分词；校验失败的指令不会被执行，返回空集。
+     */
+    private Set<Path> commandTargets(Path workspaceRoot, String command) {
+        Set<Path> targets = new LinkedHashSet<>();
+        List<String> pathTokens;
+        try {
+            pathTokens = commandValidator.validate(command, workspaceRoot).getPathTokens();
+        } catch (RuntimeException e) {
+            return targets;
+        }
+        for (String pathToken : pathTokens) {
+            String token = pathToken.replace('\\', '/');
+            String[] parts = token.split("/");
+            if (parts[0].equals("skills")) {
+                boolean wholeTree = parts.length < 2 || parts[1].isEmpty() || isGlob(parts[1]);
+                targets.add(wholeTree ? workspaceRoot.resolve("skills") : workspaceRoot.resolve("skills").resolve(parts[1]));
+            } else if (parts[0].equals("files")) {
+                boolean wholeTree = isGlob(token) || parts.length < 2;
+                targets.add(wholeTree ? workspaceRoot.resolve("files") : workspaceRoot.resolve(token).normalize());
             }
         }
+        return targets;
+    }
+
+    private static boolean isGlob(String token) {
+        return token.indexOf('*') >= 0 || token.indexOf('?') >= 0 || token.indexOf('[') >= 0;
+    }
+
+    /**
+     * 打平 skillsDir 下发生变化的技能目录 (A/A -> A)，names 为 null 时检查全部；有目录被打平时使相关索引失效。
+     */
+    private void normalizeSkills(Path skillsDir, Path marker, Collection<String> names) {
+        try {
+            if (normalizer.normalize(skillsDir, marker, names)) {
+                skillIndex.invalidate(skillsDir);
+                fileIndex.invalidate(skillsDir.getParent());
+                searchIndex.invalidate(skillsDir.getParent());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan skills for flattening: {}", skillsDir, e);
+        }
+    }
+
+    private Path baselineNormalizedMarker(String agentId) {
+        return productRoot.resolve(agentId).resolve(META_DIR).resolve(NORMALIZED_MARKER);
     }
 
     private void updateWorkspaceMeta(Path workspaceRoot) throws IOException {
@@ -266,11 +518,24 @@ public class SandboxService {
         }
     }
 
-    private Path resolveLogicalPath(String userId, String agentId, String logicalPath) {
+    /**
+     * 逻辑路径规范化：统一分隔符并消除 .、.. 与重复的 /，得到相对工作区的规范路径。
+     * 加锁单元、索引键与批量编辑的分组键都必须基于规范路径，否则 files/./a 与 files/a 会拿到不同的锁，
+     * files/../skills/A/x.py 会锁住 files 却写入 skills/A。
+     */
+    static String normalizeLogicalPath(String logicalPath) {
         if (logicalPath == null) {
             throw new RuntimeException("Security Error: Path cannot be null.");
         }
-        
+        Path normalized = Paths.get(logicalPath.replace('\\', '/')).normalize();
+        if (normalized.isAbsolute() || normalized.startsWith("..")) {
+            throw new RuntimeException("Security Error: Access out of scope. Path: " + logicalPath);
+        }
+        return normalized.toString().replace('\\', '/');
+    }
+
+    private Path resolveLogicalPath(String userId, String agentId, String rawPath) {
+        String logicalPath = normalizeLogicalPath(rawPath);
         if (logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR)) {
             Path creatorRoot = productRoot.resolve(SKILL_CREATOR_DIR);
             String subPath = logicalPath.substring(("skills/" + SKILL_CREATOR_DIR).length());
@@ -292,82 +557,130 @@ public class SandboxService {
         return physicalPath;
     }
 
-    private Path isRedundantDirectory(Path dir, String expectedName) {
-        try {
-            if (!Files.exists(dir) || !Files.isDirectory(dir)) return null;
-            // 判定标准：一级目录没有 SKILL.md，且仅包含唯一的同名子目录 (符合 "A下面没有任何内容")
-            if (Files.exists(dir.resolve("SKILL.md"))) return null;
-            Path nested = dir.resolve(expectedName);
-            if (!Files.exists(nested) || !Files.isDirectory(nested)) return null;
-            
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-                Iterator<Path> it = stream.iterator();
-                if (it.hasNext()) {
-                    it.next(); // 跳过第一个 (即 nested)
-                    if (it.hasNext()) return null; // 还有其他东西，不视为冗余
-                }
-            }
-            return nested;
-        } catch (Exception ignored) {}
-        return null;
+    /**
+     * 解析只读访问的物理路径。overlay 模式下工作区没有该路径、且未被删除或物化时回落到基线中的同名路径。
+     */
+    private Path resolveReadablePath(String userId, String agentId, String logicalPath) throws IOException {
+        Path physicalPath = resolveLogicalPath(userId, agentId, logicalPath);
+        if (!isOverlay() || logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR) || Files.exists(physicalPath)) {
+            return physicalPath;
+        }
+        Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+        String logical = workspaceRoot.relativize(physicalPath).toString().replace('\\', '/');
+        if (logical.isEmpty() || !overlay.isLowerVisible(workspaceRoot, logical)) return physicalPath;
+        Path lowerPath = getBaselineRoot(agentId).resolve(logical);
+        return Files.exists(lowerPath) ? lowerPath : physicalPath;
+    }
+
+    /**
+     * overlay 模式下修改某个仍回落到基线的文件前，先把它复制到工作区 (写时复制)。
+     */
+    private boolean copyUp(String userId, String agentId, String logicalPath, Path physicalPath) throws IOException {
+        if (!isOverlay() || Files.exists(physicalPath)) return false;
+        Path lowerPath = resolveReadablePath(userId, agentId, logicalPath);
+        if (lowerPath.equals(physicalPath)) return false;
+        Files.createDirectories(physicalPath.getParent());
+        Files.copy(lowerPath, physicalPath, StandardCopyOption.COPY_ATTRIBUTES);
+        return true;
     }
 
     public String uploadSkillReport(String userId, String agentId, MultipartFile file) throws IOException {
         log.info("Starting skill upload to baseline for agent: {}, by user: {}", agentId, userId);
         Path baselineSkillsDir = getBaselineRoot(agentId).resolve("skills");
         
-        byte[] data = storageService.readAllBytesFromInputStream(file.getInputStream());
         Set<String> affectedSkills = new HashSet<>();
         Set<String> skillsWithMd = new HashSet<>();
 
-        storageService.writeLockedVoid(agentId, () -> {
-            try {
-                try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), StandardCharsets.UTF_8)) {
-                    scanAndValidateSkills(zis, affectedSkills, skillsWithMd);
-                }
-            } catch (IllegalArgumentException e) {
-                if (e.getMessage() != null && e.getMessage().contains("MALFORMED")) {
-                    affectedSkills.clear();
-                    skillsWithMd.clear();
-                    try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), Charset.forName("GBK"))) {
-                        scanAndValidateSkills(zis, affectedSkills, skillsWithMd);
-                    }
-                } else {
-                    throw e;
-                }
-            }
-            
+        // 上传内容一次性落盘到临时文件，之后的校验与解压均直接读取 zip 中央目录，堆内存占用与包大小无关
+        Path zipPath = storageService.spoolToTempFile(file.getInputStream(), "skill-upload-");
+        try (ZipFile zip = new ZipFile(zipPath.toFile(), detectZipCharset(zipPath))) {
+            scanAndValidateSkills(zip, affectedSkills, skillsWithMd);
+
             if (affectedSkills.isEmpty()) throw new RuntimeException("Validation Error: No valid skill directory found.");
-            
+
             // --- 新增：禁止上传名为 skill-creator 的技能 ---
             if (affectedSkills.contains(SKILL_CREATOR_DIR)) {
                 throw new RuntimeException("Validation Error: Skill name '" + SKILL_CREATOR_DIR + "' is reserved for system tools and cannot be uploaded.");
             }
-            
-            for (String skill : affectedSkills) {
-                storageService.deleteRecursively(baselineSkillsDir.resolve(skill));
-            }
 
+            // 锁外：解压到暂存目录并完成打平、入库等耗时处理
+            Path stagingDir = productRoot.resolve(agentId).resolve(STAGING_DIR).resolve(UUID.randomUUID().toString());
             try {
-                try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), StandardCharsets.UTF_8)) {
-                    extractZip(zis, baselineSkillsDir, null);
-                }
-            } catch (IllegalArgumentException e) {
-                try (ZipInputStream zis = new ZipInputStream(new java.io.ByteArrayInputStream(data), Charset.forName("GBK"))) {
-                    extractZip(zis, baselineSkillsDir, null);
+                Path stagedSkillsDir = stagingDir.resolve("skills");
+                Files.createDirectories(stagedSkillsDir);
+                extractZip(zip, stagedSkillsDir, null);
+
+                Map<String, FileManifest> manifests = new HashMap<>();
+                for (String skill : affectedSkills) {
+                    Path stagedSkill = stagedSkillsDir.resolve(skill);
+                    if (!Files.isDirectory(stagedSkill)) continue;
+                    // --- 物理压缩处理 (A/A -> A) ---
+                    normalizer.flatten(stagedSkill, skill);
+                    manifests.put(skill, blobStore.isEnabled() ? blobStore.internTree(stagedSkill, null) : FileManifest.scan(stagedSkill, null));
                 }
+
+                // 锁内：仅做目录原子替换
+                storageService.writeLockedVoid("uploadSkill", agentId, () -> {
+                    publishStagedSkills(stagedSkillsDir, baselineSkillsDir, stagingDir.resolve("replaced"), affectedSkills);
+                    for (Map.Entry<String, FileManifest> e : manifests.entrySet()) {
+                        e.getValue().store(baselineManifestFile(agentId, e.getKey()));
+                    }
+                    // 暂存时已打平，这里只记录标记
+                    normalizeSkills(baselineSkillsDir, baselineNormalizedMarker(agentId), affectedSkills);
+                    skillIndex.invalidate(baselineSkillsDir);
+                    onBaselineChanged(agentId);
+                });
+            } finally {
+                storageService.deleteRecursively(stagingDir);
             }
-            
-            // --- 物理压缩处理 (A/A -> A) ---
-            flattenAllSkills(baselineSkillsDir);
-        });
+        } finally {
+            Files.deleteIfExists(zipPath);
+        }
 
         return "Baseline updated successfully. Skills: " + affectedSkills;
     }
 
+    /**
+     * 以目录重命名的方式发布暂存技能：旧版本先移入 replacedDir，新版本再移入基线。
+     * 任一步失败时按相反顺序回滚，基线不会停留在半更新状态。
+     */
+    private void publishStagedSkills(Path stagedSkillsDir, Path baselineSkillsDir, Path replacedDir, Set<String> skills) throws IOException {
+        Files.createDirectories(replacedDir);
+        Deque<String[]> undo = new ArrayDeque<>();
+        try {
+            for (String skill : skills) {
+                Path staged = stagedSkillsDir.resolve(skill);
+                if (!Files.isDirectory(staged)) continue;
+                Path target = baselineSkillsDir.resolve(skill);
+                Path replaced = replacedDir.resolve(skill);
+                if (Files.exists(target)) {
+                    Files.move(target, replaced, StandardCopyOption.ATOMIC_MOVE);
+                    undo.push(new String[]{"restore", skill});
+                }
+                Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+                undo.push(new String[]{"unpublish", skill});
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to publish staged skills, rolling back", e);
+            while (!undo.isEmpty()) {
+                String[] step = undo.pop();
+                try {
+                    if (step[0].equals("unpublish")) {
+                        Files.move(baselineSkillsDir.resolve(step[1]), stagedSkillsDir.resolve(step[1]), StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.move(replacedDir.resolve(step[1]), baselineSkillsDir.resolve(step[1]), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } catch (IOException rollbackError) {
+                    log.error("Rollback step failed: {} {}", step[0], step[1], rollbackError);
+                }
+            }
+            throw e;
+        }
+    }
+
     public List<SkillMetadata> getSkillList(String userId, String agentId, boolean includeStatus, String role) throws IOException {
         if (includeStatus && "manager".equalsIgnoreCase(role)) {
-            storageService.writeLockedVoid(agentId, () -> {
+            storageService.workspaceWriteLocked("managerSync", agentId, userId, () -> {
                 syncFromBaselineToWorkspace(userId, agentId);
             });
         }
@@ -375,64 +688,69 @@ public class SandboxService {
         Path workspaceRoot = getWorkspaceRoot(userId, agentId);
         Path wsSkillsDir = workspaceRoot.resolve("skills");
         
-        Properties syncMeta = new Properties();
-        if (includeStatus) {
-            Path metaFile = workspaceRoot.resolve(META_DIR).resolve("skills_sync.properties");
-            if (Files.exists(metaFile)) {
-                try (java.io.InputStream is = Files.newInputStream(metaFile)) {
-                    syncMeta.load(is);
-                }
-            }
-        }
+        Properties syncMeta = includeStatus ? loadSyncMeta(workspaceRoot) : new Properties();
 
         Path blSkillsDir = getBaselineRoot(agentId).resolve("skills");
-        
-        // --- 物理压缩处理 (基线层 A/A -> A) ---
-        flattenAllSkills(blSkillsDir);
 
-        return storageService.readLocked(agentId, () -> {
+        return storageService.workspaceReadLocked("getSkillList", agentId, userId, () -> {
             List<SkillMetadata> metadataList = new ArrayList<>();
-            Set<String> processedSkills = new HashSet<>();
-
-            if (Files.exists(wsSkillsDir)) {
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(wsSkillsDir)) {
-                    for (Path skillEntry : stream) {
-                        if (Files.isDirectory(skillEntry) && Files.exists(skillEntry.resolve("SKILL.md"))) {
-                            String skillName = skillEntry.getFileName().toString();
-                            processedSkills.add(skillName);
-
-                            SkillMetadata meta = parseSkillMd(skillEntry);
-                            if (includeStatus) {
-                                String key = Base64.getEncoder().encodeToString(skillName.getBytes(StandardCharsets.UTF_8));
-                                long currentMtime = Files.getLastModifiedTime(skillEntry).toMillis();
-                                long lastSyncMtime = Long.parseLong(syncMeta.getProperty(key, "0"));
-                                Path blSkillPath = blSkillsDir.resolve(skillName);
-                                
-                                if (!Files.exists(blSkillPath)) {
-                                    meta.setStatus("LOCAL_ONLY");
-                                } else {
-                                    long blMtime = Files.getLastModifiedTime(blSkillPath).toMillis();
-                                    if (blMtime > currentMtime) meta.setStatus("OUT_OF_SYNC");
-                                    else if (currentMtime > lastSyncMtime) meta.setStatus("MODIFIED");
-                                    else meta.setStatus("UNCHANGED");
-                                }
-                                meta.setLastSyncTime(formatTime(lastSyncMtime));
-                            } else {
-                                meta.setStatus(null);
-                                meta.setLastSyncTime(null);
-                            }
-                            metadataList.add(meta);
-                        }
+            Map<String, SkillIndex.SkillEntry> baselineSkills = (includeStatus || isOverlay())
+                    ? skillIndex.snapshot(blSkillsDir) : Collections.<String, SkillIndex.SkillEntry>emptyMap();
+            Map<String, SkillIndex.SkillEntry> workspaceSkills = skillIndex.snapshot(wsSkillsDir);
+            Predicate<String> lowerVisible = isOverlay() ? overlay.lowerFilter(workspaceRoot) : null;
+
+            Set<String> skillNames = new TreeSet<>(workspaceSkills.keySet());
+            if (lowerVisible != null) {
+                for (String skillName : baselineSkills.keySet()) {
+                    if (lowerVisible.test("skills/" + skillName)) skillNames.add(skillName);
+                }
+            }
+            for (String skillName : skillNames) {
+                SkillIndex.SkillEntry entry = workspaceSkills.get(skillName);
+                SkillIndex.SkillEntry blEntry = baselineSkills.get(skillName);
+                if (entry == null) {
+                    // overlay：工作区中没有任何改动的技能，完全取自基线
+                    if (!blEntry.hasSkillMd()) continue;
+                    SkillMetadata meta = blEntry.toMetadata();
+                    if (includeStatus) {
+                        meta.setStatus("UNCHANGED");
+                        meta.setLastSyncTime(formatTime(blEntry.getDirMtime()));
                     }
+                    metadataList.add(meta);
+                    continue;
                 }
+                SkillIndex.SkillEntry described = entry;
+                if (!entry.hasSkillMd() && lowerVisible != null && blEntry != null
+                        && lowerVisible.test("skills/" + skillName + "/SKILL.md")) {
+                    // overlay：工作区只有该技能的部分文件，SKILL.md 仍来自基线
+                    described = blEntry;
+                }
+                if (!described.hasSkillMd()) continue;
+                SkillMetadata meta = described.toMetadata();
+                if (includeStatus) {
+                    String key = Base64.getEncoder().encodeToString(skillName.getBytes(StandardCharsets.UTF_8));
+                    long currentMtime = entry.getDirMtime();
+                    long lastSyncMtime = Long.parseLong(syncMeta.getProperty(key, "0"));
+
+                    if (blEntry == null) {
+                        meta.setStatus("LOCAL_ONLY");
+                    } else {
+                        long blMtime = blEntry.getDirMtime();
+                        if (blMtime > currentMtime) meta.setStatus("OUT_OF_SYNC");
+                        else if (currentMtime > lastSyncMtime) meta.setStatus("MODIFIED");
+                        else meta.setStatus("UNCHANGED");
+                    }
+                    meta.setLastSyncTime(formatTime(lastSyncMtime));
+                }
+                metadataList.add(meta);
             }
 
             // 补充：默认返回全局的 skill-creator
-            Path globalCreatorPath = productRoot.resolve(SKILL_CREATOR_DIR);
-            if (Files.exists(globalCreatorPath) && Files.isDirectory(globalCreatorPath)) {
-                String creatorName = globalCreatorPath.getFileName().toString();
+            SkillIndex.SkillEntry creator = getCreatorEntry();
+            if (creator != null) {
+                String creatorName = SKILL_CREATOR_DIR;
                 if (metadataList.stream().noneMatch(m -> m.getName().equals(creatorName))) {
-                    SkillMetadata creatorMeta = parseSkillMd(globalCreatorPath);
+                    SkillMetadata creatorMeta = creator.toMetadata();
                     if (includeStatus) {
                         creatorMeta.setStatus("UNCHANGED");
                         creatorMeta.setLastSyncTime("System");
@@ -445,6 +763,33 @@ public class SandboxService {
         });
     }
 
+    /**
+     * 全局 skill-creator 仅在启动时刷新，其元数据解析一次后常驻内存。
+     */
+    private SkillIndex.SkillEntry getCreatorEntry() throws IOException {
+        if (!creatorResolved) {
+            Path globalCreatorPath = productRoot.resolve(SKILL_CREATOR_DIR);
+            creatorEntry = Files.isDirectory(globalCreatorPath) ? skillIndex.describe(globalCreatorPath) : null;
+            creatorResolved = true;
+        }
+        return creatorEntry;
+    }
+
+    private Properties loadSyncMeta(Path workspaceRoot) throws IOException {
+        Properties cached = syncMetaCache.get(workspaceRoot);
+        if (cached == null) {
+            cached = new Properties();
+            Path metaFile = workspaceRoot.resolve(META_DIR).resolve("skills_sync.properties");
+            if (Files.exists(metaFile)) {
+                try (java.io.InputStream is = Files.newInputStream(metaFile)) {
+                    cached.load(is);
+                }
+            }
+            syncMetaCache.put(workspaceRoot, cached);
+        }
+        return cached;
+    }
+
     private String formatTime(long millis) {
         if (millis <= 0) return "Never";
         return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(millis), java.time.ZoneId.systemDefault())
@@ -457,14 +802,29 @@ public class SandboxService {
         Path baselineSkillsDir = getBaselineRoot(agentId).resolve("skills");
         Path baselineSkill = baselineSkillsDir.resolve(skillName);
 
-        storageService.writeLockedVoid(agentId, () -> {
-            if ("bl2ws".equalsIgnoreCase(direction)) {
+        String unit = "skills/" + skillName;
+        if (isOverlay() && !"bl2ws".equalsIgnoreCase(direction)) {
+            // overlay：先把技能补齐到工作区，得到完整的工作区版本再同步到基线
+            storageService.workspaceWriteLocked("materialize", agentId, userId, () -> materialize(workspaceRoot, agentId, unit));
+        }
+
+        SyncReport report = new SyncReport();
+        StorageService.IOVoidAction sync = () -> {
+            if ("bl2ws".equalsIgnoreCase(direction) && isOverlay()) {
+                // overlay：丢弃工作区层，技能重新完全回落到基线
+                if (!Files.exists(baselineSkill) && !Files.exists(workspaceSkill)) {
+                    throw new IOException("Skill not found in both baseline and workspace: " + skillName);
+                }
+                if (Files.exists(workspaceSkill)) {
+                    storageService.deleteRecursively(workspaceSkill);
+                }
+                overlay.reset(workspaceRoot, unit);
+                log.info("Workspace overlay discarded for skill: {}", skillName);
+            } else if ("bl2ws".equalsIgnoreCase(direction)) {
                 // 基线 -> 工作区 (手动同步)
                 if (Files.exists(baselineSkill)) {
-                    storageService.deleteRecursively(workspaceSkill);
-                    Files.createDirectories(workspaceSkill.getParent());
-                    FileSystemUtils.copyRecursively(baselineSkill.toFile(), workspaceSkill.toFile());
-                    log.info("Workspace updated from baseline for skill: {}", skillName);
+                    report.merge(syncSkillToWorkspace(agentId, skillName, workspaceRoot));
+                    log.info("Workspace updated from baseline for skill: {} ({})", skillName, report);
                 } else if (Files.exists(workspaceSkill)) {
                     // 如果基线不存在但工作区存在 (LOCAL_ONLY)，同步基线到工作区意味着删除工作区内容
                     storageService.deleteRecursively(workspaceSkill);
@@ -475,36 +835,51 @@ public class SandboxService {
             } else {
                 // 工作区 -> 基线 (ws2bl, 默认)
                 if (Files.exists(workspaceSkill)) {
-                    storageService.deleteRecursively(baselineSkill);
-                    Files.createDirectories(baselineSkill.getParent());
-                    FileSystemUtils.copyRecursively(workspaceSkill.toFile(), baselineSkill.toFile());
+                    // 工作区文件可能被脚本原地改写，只拷贝到基线，不与基线或 blob 共享 inode；入库由 indexBaselineSkill 完成
+                    Path wsManifestFile = workspaceManifestFile(workspaceRoot, skillName);
+                    Path blManifestFile = baselineManifestFile(agentId, skillName);
+                    FileManifest wsManifest = FileManifest.load(wsManifestFile);
+                    FileManifest blManifest = FileManifest.load(blManifestFile);
+                    report.merge(storageService.syncTree(workspaceSkill, wsManifest, baselineSkill, blManifest, false));
+                    wsManifest.store(wsManifestFile);
+                    blManifest.store(blManifestFile);
+                    if (report.getFilesTouched() > 0) {
+                        // 增量同步不会重建目录，需显式刷新技能目录 mtime，使其他用户感知到 OUT_OF_SYNC
+                        Files.setLastModifiedTime(baselineSkill, java.nio.file.attribute.FileTime.from(java.time.Instant.now()));
+                    }
                     
                     // --- 物理压缩处理 (A/A -> A) ---
-                    physicallyFlattenSkill(baselineSkill, skillName);
+                    normalizeSkills(baselineSkillsDir, baselineNormalizedMarker(agentId), Collections.singleton(skillName));
+                    indexBaselineSkill(agentId, skillName);
                     
-                    log.info("Baseline updated for skill: {}", skillName);
+                    log.info("Baseline updated for skill: {} ({})", skillName, report);
                 } else if (Files.exists(baselineSkill)) {
                     storageService.deleteRecursively(baselineSkill);
+                    indexBaselineSkill(agentId, skillName);
                     log.info("Baseline deleted for skill (workspace not found): {}", skillName);
                 } else {
                     throw new IOException("Skill not found in both workspace and baseline: " + skillName);
                 }
             }
             updateWorkspaceMetaForSkill(workspaceRoot, agentId, skillName);
-        });
+            skillIndex.invalidate(baselineSkillsDir);
+            onBaselineChanged(agentId);
+        };
+        if ("bl2ws".equalsIgnoreCase(direction)) {
+            // 只读基线、改写本用户工作区：agent 上持意向锁，不阻塞其他用户
+            storageService.workspaceWriteLocked("baselineSync", agentId, userId, sync);
+        } else {
+            storageService.writeLockedVoid("baselineSync", agentId, sync);
+        }
 
-        return "Skill synchronization completed (" + (direction != null ? direction : "ws2bl") + ") for: " + skillName;
+        return "Skill synchronization completed (" + (direction != null ? direction : "ws2bl") + ") for: " + skillName + " [" + report + "]";
     }
 
     private void updateWorkspaceMetaForSkill(Path workspaceRoot, String agentId, String skillName) throws IOException {
         log.info("Updating workspace meta for skill: {} in workspace: {}, agentId: {}", skillName, workspaceRoot, agentId);
         Path metaFile = workspaceRoot.resolve(META_DIR).resolve("skills_sync.properties");
         Properties props = new Properties();
-        if (Files.exists(metaFile)) {
-            try (java.io.InputStream is = Files.newInputStream(metaFile)) {
-                props.load(is);
-            }
-        }
+        props.putAll(loadSyncMeta(workspaceRoot));
         Path blSkillPath = getBaselineRoot(agentId).resolve("skills").resolve(skillName);
         Path wsSkillPath = workspaceRoot.resolve("skills").resolve(skillName);
 
@@ -525,6 +900,10 @@ public class SandboxService {
         try (java.io.OutputStream os = Files.newOutputStream(metaFile)) {
             props.store(os, "Workspace Sync Metadata Updated (Aligned with Base64 Keys)");
         }
+        syncMetaCache.put(workspaceRoot, props);
+        skillIndex.invalidate(wsSkillPath.getParent());
+        fileIndex.invalidate(workspaceRoot);
+        searchIndex.invalidate(workspaceRoot);
     }
 
     public String deleteSkill(String userId, String agentId, String skillName) throws IOException {
@@ -532,9 +911,12 @@ public class SandboxService {
         Path skillPath = blSkillsDir.resolve(skillName).normalize();
         storageService.validateScope(skillPath, blSkillsDir);
 
-        storageService.writeLockedVoid(agentId, () -> {
+        storageService.writeLockedVoid("deleteSkill", agentId, () -> {
             if (Files.exists(skillPath)) {
                 storageService.deleteRecursively(skillPath);
+                indexBaselineSkill(agentId, skillName);
+                skillIndex.invalidate(blSkillsDir);
+                onBaselineChanged(agentId);
                 log.info("Deleted skill from baseline: {}", skillName);
             }
         });
@@ -566,18 +948,19 @@ public class SandboxService {
                         Path wsSkill = workspaceSkillsDir.resolve(skillName);
                         long blMtime = Files.getLastModifiedTime(blSkill).toMillis();
 
-                        if (!Files.exists(wsSkill)) {
+                        if (isOverlay()) {
+                            syncOverlaySkill(workspaceRoot, agentId, skillName, blMtime);
+                        } else if (!Files.exists(wsSkill)) {
                             // 新增同步
-                            log.info("Manager Sync: Adding new skill to workspace: {}", skillName);
-                            FileSystemUtils.copyRecursively(blSkill.toFile(), wsSkill.toFile());
+                            SyncReport report = syncSkillToWorkspace(agentId, skillName, workspaceRoot);
+                            log.info("Manager Sync: Added new skill to workspace: {} ({})", skillName, report);
                             updateWorkspaceMetaForSkill(workspaceRoot, agentId, skillName);
                         } else {
-                            // 更新同步：基线晚于工作区修改时间才同步
+                            // 更新同步：基线晚于工作区修改时间才同步，仅搬运有差异的文件
                             long wsMtime = Files.getLastModifiedTime(wsSkill).toMillis();
                             if (blMtime > wsMtime) {
-                                log.info("Manager Sync: Updating skill in workspace (baseline is newer): {}", skillName);
-                                storageService.deleteRecursively(wsSkill);
-                                FileSystemUtils.copyRecursively(blSkill.toFile(), wsSkill.toFile());
+                                SyncReport report = syncSkillToWorkspace(agentId, skillName, workspaceRoot);
+                                log.info("Manager Sync: Updated skill in workspace (baseline is newer): {} ({})", skillName, report);
                                 updateWorkspaceMetaForSkill(workspaceRoot, agentId, skillName);
                             }
                         }
@@ -598,6 +981,7 @@ public class SandboxService {
                         if (!Files.exists(blSkill)) {
                             log.info("Manager Sync: Deleting skill from workspace (removed from baseline): {}", skillName);
                             storageService.deleteRecursively(wsSkill);
+                            if (isOverlay()) overlay.reset(workspaceRoot, "skills/" + skillName);
                             updateWorkspaceMetaForSkill(workspaceRoot, agentId, skillName);
                         }
                     }
@@ -606,17 +990,45 @@ public class SandboxService {
         }
     }
 
+    /**
+     * overlay 模式下的管理员同步：未改动的技能本就直接读基线，无需处理；
+     * 被删除、或基线晚于工作区修改的技能丢弃工作区层，重新回落到基线。
+     */
+    private void syncOverlaySkill(Path workspaceRoot, String agentId, String skillName, long blMtime) throws IOException {
+        String unit = "skills/" + skillName;
+        Path wsSkill = workspaceRoot.resolve(unit);
+        boolean hasLayer = overlay.isMaterialized(workspaceRoot, unit) || overlay.hasWhiteouts(workspaceRoot, unit);
+        if (Files.exists(wsSkill)) {
+            if (blMtime <= Files.getLastModifiedTime(wsSkill).toMillis()) return;
+            storageService.deleteRecursively(wsSkill);
+        } else if (!hasLayer) {
+            return;
+        }
+        overlay.reset(workspaceRoot, unit);
+        log.info("Manager Sync: Reset workspace overlay to baseline for skill: {}", skillName);
+        updateWorkspaceMetaForSkill(workspaceRoot, agentId, skillName);
+    }
+
     public void downloadSkill(String userId, String agentId, String skillName, java.io.OutputStream os) throws IOException {
-        Path skillPath = resolveLogicalPath(userId, agentId, "skills/" + skillName);
+        String unit = "skills/" + skillName;
+        if (isOverlay() && !skillName.equals(SKILL_CREATOR_DIR)) {
+            Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+            boolean partial = Files.exists(workspaceRoot.resolve(unit)) || overlay.hasWhiteouts(workspaceRoot, unit);
+            if (partial && !overlay.isMaterialized(workspaceRoot, unit)) {
+                // 工作区只有部分改动：补齐后打包工作区版本；未改动的技能直接打包基线 (压缩包缓存在用户间共享)
+                storageService.workspaceWriteLocked("materialize", agentId, userId, () -> materialize(workspaceRoot, agentId, unit));
+            }
+        }
+        Path skillPath = resolveReadablePath(userId, agentId, unit);
         if (!Files.exists(skillPath) || !Files.isDirectory(skillPath)) {
             throw new IOException("Skill not found: " + skillName);
         }
-        storageService.readLocked(agentId, () -> {
-            try (ZipOutputStream zos = new ZipOutputStream(os)) {
-                zipDirectory(skillPath, skillName, zos);
-            }
-            return null;
-        });
+        // 读锁只覆盖清单扫描与压缩包生成，已生成的压缩包在锁外写出
+        java.io.InputStream archive = storageService.pathReadLocked("downloadSkill", agentId, userId, "skills/" + skillName,
+                () -> skillArchiver.open(skillPath, skillName, productRoot.resolve(ARCHIVE_CACHE_DIR)));
+        try (java.io.InputStream in = archive) {
+            StreamUtils.copy(in, os);
+        }
     }
 
     public String installCreator(String userId, String agentId) throws IOException {
@@ -624,81 +1036,269 @@ public class SandboxService {
     }
 
     public String uploadFile(String userId, String agentId, MultipartFile file) throws IOException {
-        Path filesDir = getWorkspaceRoot(userId, agentId).resolve("files");
-        String fileName = file.getOriginalFilename();
-        Path targetPath = filesDir.resolve(fileName).normalize();
-        
-        storageService.writeLockedVoid(agentId, () -> {
-            Files.createDirectories(filesDir);
-            Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+        String logicalPath = "files/" + file.getOriginalFilename();
+        resolveUploadTarget(userId, agentId, logicalPath);
+        // 先落到暂存区，只有最后的 rename 需要持有路径写锁
+        Path tempFile = Files.createTempFile(uploadStagingDir(userId, agentId), "multipart-", ".data");
+        try {
+            try (java.io.InputStream in = file.getInputStream()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return publishUpload(userId, agentId, logicalPath, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 校验上传目标：只能位于 files/ 下且不越界。
+     */
+    public Path resolveUploadTarget(String userId, String agentId, String rawPath) {
+        // 前缀检查基于规范化后的路径，files/../skills/A/run.py 这类路径不能借 files/ 前缀写入技能目录
+        String logicalPath = rawPath == null || rawPath.endsWith("/") ? null : normalizeLogicalPath(rawPath);
+        if (logicalPath == null || !logicalPath.startsWith("files/")) {
+            throw new RuntimeException("Security Error: Uploads must target a file under 'files/'. Current path: " + rawPath);
+        }
+        return resolveLogicalPath(userId, agentId, logicalPath);
+    }
+
+    /**
+     * 上传暂存目录 (工作区 .uploads/)，与 files/ 同处一个文件系统，保证发布时的 rename 是原子的。
+     */
+    public Path uploadStagingDir(String userId, String agentId) throws IOException {
+        Path stagingDir = getWorkspaceRoot(userId, agentId).resolve(ChunkedUploadService.UPLOADS_DIR);
+        Files.createDirectories(stagingDir);
+        return stagingDir;
+    }
+
+    /**
+     * 列出所有已存在的上传暂存目录，供上传服务清理服务重启后遗留的会话。
+     */
+    public List<Path> listUploadStagingDirs() throws IOException {
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> agentStream = Files.newDirectoryStream(productRoot)) {
+            for (Path agentDir : agentStream) {
+                Path workspacesDir = agentDir.resolve(WORKSPACES_DIR);
+                if (!Files.isDirectory(workspacesDir)) continue;
+                try (DirectoryStream<Path> userStream = Files.newDirectoryStream(workspacesDir)) {
+                    for (Path userDir : userStream) {
+                        Path stagingDir = userDir.resolve(ChunkedUploadService.UPLOADS_DIR);
+                        if (Files.isDirectory(stagingDir)) dirs.add(stagingDir);
+                    }
+                }
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * 将暂存区中写完的文件原子地发布到目标路径；替换的是目录项，硬链接供给的基线文件不受影响。
+     */
+    public String publishUpload(String userId, String agentId, String rawPath, Path stagedFile) throws IOException {
+        String logicalPath = normalizeLogicalPath(rawPath);
+        Path targetPath = resolveUploadTarget(userId, agentId, logicalPath);
+        storageService.pathWriteLocked("uploadFile", agentId, userId, logicalPath, () -> {
+            Files.createDirectories(targetPath.getParent());
+            Files.move(stagedFile, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, targetPath);
+            searchIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, targetPath);
+            if (isOverlay()) overlay.clearWhiteouts(getWorkspaceRoot(userId, agentId), logicalPath);
         });
-        return "File uploaded to workspace: files/" + fileName;
+        return "File uploaded to workspace: " + logicalPath;
     }
 
     public List<String> listFiles(String userId, String agentId, String logicalPrefix) throws IOException {
-        final Path workspaceRoot = getWorkspaceRoot(userId, agentId);
-        final Path physicalRoot = resolveLogicalPath(userId, agentId, logicalPrefix);
-        if (!Files.exists(physicalRoot)) return Collections.emptyList();
+        FileListPage page = listFiles(userId, agentId, logicalPrefix, null, null, Integer.MAX_VALUE);
+        List<String> paths = new ArrayList<>(page.getItems().size());
+        for (FileEntry entry : page.getItems()) {
+            paths.add(entry.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * 分页列出目录清单 (含大小与修改时间)。工作区路径从文件索引读取，不遍历目录树，也不持有路径锁。
+     */
+    public FileListPage listFiles(String userId, String agentId, String rawPrefix, String glob, String cursor, int limit) throws IOException {
+        String logicalPrefix = normalizeLogicalPath(rawPrefix);
+        Path physicalRoot = resolveLogicalPath(userId, agentId, logicalPrefix);
+        if (logicalPrefix.startsWith("skills/" + SKILL_CREATOR_DIR)) {
+            Path creatorRoot = productRoot.resolve(SKILL_CREATOR_DIR);
+            String rel = creatorRoot.relativize(physicalRoot).toString().replace('\\', '/');
+            String logicalRoot = "skills/" + SKILL_CREATOR_DIR + (rel.isEmpty() ? "" : "/" + rel);
+            return fileIndex.listDirectory(physicalRoot, logicalRoot, glob, cursor, limit);
+        }
+        Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+        String logicalRoot = workspaceRoot.relativize(physicalRoot).toString().replace('\\', '/');
+        if (isOverlay()) {
+            return listOverlay(workspaceRoot, getBaselineRoot(agentId), logicalRoot, glob, cursor, limit);
+        }
+        return fileIndex.list(workspaceRoot, logicalRoot, glob, cursor, limit);
+    }
 
-        return storageService.readLocked(agentId, () -> {
-            try (Stream<Path> stream = Files.walk(physicalRoot, 5)) {
-                return stream.parallel()
-                        .filter(Files::isRegularFile)
-                        .map(file -> workspaceRoot.relativize(file).toString().replace('\\', '/'))
-                        .collect(Collectors.toList());
+    /**
+     * overlay 模式的目录清单：工作区与基线两份有序清单归并，同名路径以工作区为准，
+     * 基线条目按删除标记与物化状态过滤。两侧使用同一种游标 (上一页最后一个路径)。
+     */
+    private FileListPage listOverlay(Path workspaceRoot, Path baselineRoot, String logicalRoot, String glob, String cursor, int limit) throws IOException {
+        Predicate<String> lowerVisible = overlay.lowerFilter(workspaceRoot);
+        int batch = Math.min(limit, 1000) + 1;
+        Deque<FileEntry> upper = new ArrayDeque<>();
+        Deque<FileEntry> lower = new ArrayDeque<>();
+        String upperCursor = cursor;
+        String lowerCursor = cursor;
+        boolean upperMore = true;
+        boolean lowerMore = true;
+        List<FileEntry> items = new ArrayList<>();
+        while (items.size() <= limit) {
+            if (upper.isEmpty() && upperMore) {
+                FileListPage page = fileIndex.list(workspaceRoot, logicalRoot, glob, upperCursor, batch);
+                upper.addAll(page.getItems());
+                upperCursor = page.getNextCursor();
+                upperMore = upperCursor != null;
             }
-        });
+            if (lower.isEmpty() && lowerMore) {
+                FileListPage page = fileIndex.list(baselineRoot, logicalRoot, glob, lowerCursor, batch);
+                lower.addAll(page.getItems());
+                lowerCursor = page.getNextCursor();
+                lowerMore = lowerCursor != null;
+            }
+            FileEntry u = upper.peek();
+            FileEntry l = lower.peek();
+            if (u == null && l == null) break;
+            if (l == null || (u != null && u.getPath().compareTo(l.getPath()) <= 0)) {
+                if (l != null && u.getPath().equals(l.getPath())) lower.poll();
+                items.add(upper.poll());
+            } else {
+                lower.poll();
+                if (lowerVisible.test(l.getPath())) items.add(l);
+            }
+        }
+        if (items.size() <= limit) return new FileListPage(items, null);
+        items = new ArrayList<>(items.subList(0, limit));
+        return new FileListPage(items, WorkspaceFileIndex.encodeCursor(items.get(limit - 1).getPath()));
     }
 
-    public FileContentResult getContent(String userId, String agentId, String logicalPath, Integer offset, Integer limit) throws IOException {
-        Path physicalPath = resolveLogicalPath(userId, agentId, logicalPath);
+    /**
+     * 全文检索，返回行级命中。工作区路径经 trigram 索引筛选候选文件后逐行匹配，不持有路径锁。
+     * @param logicalPrefix 检索范围，如 files、skills/demo；为空时检索 skills/ 与 files/ 全部
+     */
+    public SearchResult search(String userId, String agentId, String query, boolean regex, boolean ignoreCase,
+                               String logicalPrefix, String cursor, int limit) throws IOException {
+        Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+        if (logicalPrefix == null || logicalPrefix.isEmpty()) {
+            return searchWorkspace(userId, agentId, "", query, regex, ignoreCase, cursor, limit);
+        }
+        logicalPrefix = normalizeLogicalPath(logicalPrefix);
+        Path physicalRoot = resolveLogicalPath(userId, agentId, logicalPrefix);
+        if (logicalPrefix.startsWith("skills/" + SKILL_CREATOR_DIR)) {
+            Path creatorRoot = productRoot.resolve(SKILL_CREATOR_DIR);
+            String rel = creatorRoot.relativize(physicalRoot).toString().replace('\\', '/');
+            String logicalRoot = "skills/" + SKILL_CREATOR_DIR + (rel.isEmpty() ? "" : "/" + rel);
+            return searchIndex.searchDirectory(physicalRoot, logicalRoot, query, regex, ignoreCase, cursor, limit);
+        }
+        String logicalRoot = workspaceRoot.relativize(physicalRoot).toString().replace('\\', '/');
+        return searchWorkspace(userId, agentId, logicalRoot, query, regex, ignoreCase, cursor, limit);
+    }
+
+    private SearchResult searchWorkspace(String userId, String agentId, String logicalRoot, String query, boolean regex,
+                                         boolean ignoreCase, String cursor, int limit) throws IOException {
+        Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+        if (isOverlay()) {
+            return searchIndex.search(workspaceRoot, getBaselineRoot(agentId), overlay.lowerFilter(workspaceRoot), logicalRoot,
+                    query, regex, ignoreCase, cursor, limit);
+        }
+        return searchIndex.search(workspaceRoot, logicalRoot, query, regex, ignoreCase, cursor, limit);
+    }
+
+    public FileContentResult getContent(String userId, String agentId, String rawPath, Integer offset, Integer limit) throws IOException {
+        String logicalPath = normalizeLogicalPath(rawPath);
+        Path physicalPath = resolveReadablePath(userId, agentId, logicalPath);
         if (!Files.exists(physicalPath)) throw new IOException("Path not found: " + logicalPath);
 
-        return storageService.readLocked(agentId, () -> {
-            List<String> lines;
-            try (Stream<String> lineStream = Files.lines(physicalPath, StandardCharsets.UTF_8)) {
-                if (offset != null && limit != null) {
-                    lines = lineStream.skip(Math.max(0, offset - 1)).limit(Math.max(0, limit)).collect(Collectors.toList());
-                } else {
-                    lines = lineStream.collect(Collectors.toList());
-                }
-            }
-            return new FileContentResult(String.join("\n", lines), lines);
-        });
+        Path indexDir = logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR) ? null
+                : getWorkspaceRoot(userId, agentId).resolve(ContentReader.LINE_INDEX_DIR);
+        return storageService.pathReadLocked("getContent", agentId, userId, logicalPath,
+                () -> contentReader.readLines(physicalPath, indexDir, offset, limit));
+    }
+
+    /**
+     * 解析可供原始字节读取 / 下载的文件。字节传输在锁外进行（可能由容器 sendfile 完成），不持有路径锁。
+     */
+    public Path resolveReadableFile(String userId, String agentId, String rawPath) throws IOException {
+        String logicalPath = normalizeLogicalPath(rawPath);
+        Path physicalPath = resolveReadablePath(userId, agentId, logicalPath);
+        if (!Files.isRegularFile(physicalPath)) throw new IOException("File not found: " + logicalPath);
+        return physicalPath;
     }
 
     public String write(String userId, String agentId, WriteRequest request) throws IOException {
-        if (request.getFilePath().startsWith("skills/" + SKILL_CREATOR_DIR)) {
+        String logicalPath = normalizeLogicalPath(request.getFilePath());
+        if (logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR)) {
             throw new RuntimeException("Security Error: Writing to skill-creator is strictly forbidden.");
         }
-        validateSkillMdPlacement(request.getFilePath());
-        Path physicalPath = resolveLogicalPath(userId, agentId, request.getFilePath());
-        storageService.writeLockedVoid(agentId, () -> {
+        validateSkillMdPlacement(logicalPath);
+        Path physicalPath = resolveLogicalPath(userId, agentId, logicalPath);
+        storageService.pathWriteLocked("write", agentId, userId, logicalPath, () -> {
             storageService.writeBytes(physicalPath, request.getContent().getBytes(StandardCharsets.UTF_8),
                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            if (request.getFilePath().startsWith("skills/")) {
-                touchSkillDirectory(userId, agentId, request.getFilePath());
+            fileIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, physicalPath);
+            searchIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, physicalPath);
+            if (isOverlay()) overlay.clearWhiteouts(getWorkspaceRoot(userId, agentId), logicalPath);
+            if (logicalPath.startsWith("skills/")) {
+                touchSkillDirectory(userId, agentId, logicalPath);
             }
         });
-        return "Written to workspace: " + request.getFilePath();
+        return "Written to workspace: " + logicalPath;
     }
 
     public String edit(String userId, String agentId, EditRequest request) throws IOException {
-        if (request.getFilePath().startsWith("skills/" + SKILL_CREATOR_DIR)) {
-            throw new RuntimeException("Security Error: Editing skill-creator is strictly forbidden.");
+        return edit(userId, agentId, Collections.singletonList(request));
+    }
+
+    /**
+     * 批量精确编辑：按文件分组，每个文件在其路径写锁内一趟扫描完成全部替换并原子覆盖；不同文件之间不保证原子性。
+     */
+    public String edit(String userId, String agentId, List<EditRequest> requests) throws IOException {
+        if (requests == null || requests.isEmpty()) {
+            throw new IOException("Edit Error: No edits given.");
         }
-        validateSkillMdPlacement(request.getFilePath());
-        Path physicalPath = resolveLogicalPath(userId, agentId, request.getFilePath());
-        if (!Files.exists(physicalPath)) {
-            throw new IOException("Edit Error: File not found: " + request.getFilePath());
+        Map<String, List<EditRequest>> byFile = new LinkedHashMap<>();
+        for (EditRequest request : requests) {
+            String logicalPath = normalizeLogicalPath(request.getFilePath());
+            if (logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR)) {
+                throw new RuntimeException("Security Error: Editing skill-creator is strictly forbidden.");
+            }
+            validateSkillMdPlacement(logicalPath);
+            byFile.computeIfAbsent(logicalPath, k -> new ArrayList<>()).add(request);
         }
-        storageService.writeLockedVoid(agentId, () -> {
-            storageService.preciseEdit(physicalPath, request.getOldString(), request.getNewString(), request.getExpectedReplacements());
-            if (request.getFilePath().startsWith("skills/")) {
-                touchSkillDirectory(userId, agentId, request.getFilePath());
+        Map<String, Path> physicalPaths = new LinkedHashMap<>();
+        for (String logicalPath : byFile.keySet()) {
+            Path physicalPath = resolveLogicalPath(userId, agentId, logicalPath);
+            if (!Files.exists(resolveReadablePath(userId, agentId, logicalPath))) {
+                throw new IOException("Edit Error: File not found: " + logicalPath);
             }
-        });
-        return "Edited in workspace: " + request.getFilePath();
+            physicalPaths.put(logicalPath, physicalPath);
+        }
+        for (Map.Entry<String, List<EditRequest>> group : byFile.entrySet()) {
+            String logicalPath = group.getKey();
+            storageService.pathWriteLocked("edit", agentId, userId, logicalPath, () -> {
+                boolean copied = copyUp(userId, agentId, logicalPath, physicalPaths.get(logicalPath));
+                try {
+                    storageService.preciseEdit(physicalPaths.get(logicalPath), group.getValue());
+                } catch (IOException | RuntimeException e) {
+                    // 编辑失败时撤销复制，文件继续回落到基线
+                    if (copied) Files.deleteIfExists(physicalPaths.get(logicalPath));
+                    throw e;
+                }
+                fileIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, physicalPaths.get(logicalPath));
+                searchIndex.upsert(getWorkspaceRoot(userId, agentId), logicalPath, physicalPaths.get(logicalPath));
+                if (logicalPath.startsWith("skills/")) {
+                    touchSkillDirectory(userId, agentId, logicalPath);
+                }
+            });
+        }
+        return "Edited in workspace: " + String.join(", ", byFile.keySet());
     }
 
     private void touchSkillDirectory(String userId, String agentId, String logicalPath) {
@@ -709,6 +1309,7 @@ public class SandboxService {
                 Path skillDir = getWorkspaceRoot(userId, agentId).resolve("skills").resolve(skillName);
                 if (Files.exists(skillDir) && Files.isDirectory(skillDir)) {
                     Files.setLastModifiedTime(skillDir, java.nio.file.attribute.FileTime.from(java.time.Instant.now()));
+                    skillIndex.invalidate(skillDir.getParent());
                     log.info("Touched skill directory to update mtime: {}", skillDir);
                 }
             }
@@ -718,6 +1319,18 @@ public class SandboxService {
     }
 
     public ExecutionResult execute(String userId, String agentId, CommandRequest request) throws Exception {
+        return execute(userId, agentId, request, null);
+    }
+
+    public ExecutionResult execute(String userId, String agentId, CommandRequest request, SkillExecutor.OutputListener listener) throws Exception {
+        return execute(userId, agentId, request, listener, null);
+    }
+
+    /**
+     * @param slot 调用方已占用的执行槽位 (异步任务)，非空时不再经过调度器排队，由调用方负责归还
+     */
+    public ExecutionResult execute(String userId, String agentId, CommandRequest request, SkillExecutor.OutputListener listener,
+                                   ExecutionScheduler.Ticket slot) throws Exception {
         Path workspaceRoot = getWorkspaceRoot(userId, agentId);
         String command = request.getCommand().trim();
         String creatorLogical = "skills/" + SKILL_CREATOR_DIR;
@@ -726,24 +1339,109 @@ public class SandboxService {
             command = command.replace(creatorLogical, creatorPhysical);
             log.info("Command redirected for skill-creator: {}", command);
         }
-        ExecutionResult result = skillExecutor.executeInDir(workspaceRoot, command);
+        if (isOverlay()) {
+            materializeForCommand(workspaceRoot, agentId, userId, command);
+        }
+        String cacheKey = null;
+        if (resultCache.isEnabled()) {
+            cacheKey = resultCacheKey(workspaceRoot, command);
+            ExecutionResult cached = cacheKey != null ? resultCache.get(cacheKey) : null;
+            if (cached != null) {
+                log.info("Execution result served from cache for agent: {}, user: {}", agentId, userId);
+                if (listener != null) {
+                    if (!cached.getStdout().isEmpty()) listener.onOutput("stdout", cached.getStdout());
+                    if (!cached.getStderror().isEmpty()) listener.onOutput("stderr", cached.getStderror());
+                }
+                return cached;
+            }
+        }
+        if (sharesInodes()) {
+            detachForCommand(workspaceRoot);
+        }
+        String finalCommand = command;
+        ExecutionResult result = slot != null
+                ? skillExecutor.executeInDir(workspaceRoot, finalCommand, listener)
+                : executionScheduler.run(agentId, userId, () -> skillExecutor.executeInDir(workspaceRoot, finalCommand, listener));
+        if (cacheKey != null) {
+            resultCache.put(cacheKey, result);
+        }
         
-        // --- 物理压缩处理 (A/A -> A) ---
-        flattenAllSkills(workspaceRoot.resolve("skills"));
+        // --- 物理压缩处理 (A/A -> A)：只检查指令引用到、且目录 mtime 发生变化的技能 ---
+        normalizeSkills(workspaceRoot.resolve("skills"), workspaceRoot.resolve(META_DIR).resolve(NORMALIZED_MARKER),
+                commandSkills(workspaceRoot, command));
+        skillIndex.invalidate(workspaceRoot.resolve("skills"));
+        fileIndex.invalidate(workspaceRoot);
+        searchIndex.invalidate(workspaceRoot);
+        invalidateProvisioning(workspaceRoot);
         
         return result;
     }
 
-    public String deleteFile(String userId, String agentId, String logicalPath) throws IOException {
+    /**
+     * 执行前按指令引用的技能目录与 files/ 路径计算结果缓存键；校验失败的指令交由正常执行路径报错。
+     */
+    private String resultCacheKey(Path workspaceRoot, String command) {
+        try {
+            CommandValidator.ValidatedCommand validated = commandValidator.validate(command, workspaceRoot);
+            return resultCache.key(workspaceRoot, command, validated.getPathTokens());
+        } catch (RuntimeException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 获取被截断执行的完整输出 (stdout / stderr)，直接从溢出文件流式写出。
+     */
+    public void downloadExecutionLog(String userId, String agentId, String logId, String stream, java.io.OutputStream os) throws IOException {
+        if (logId == null || !logId.matches("^[0-9a-f]{32}$") || !("stdout".equals(stream) || "stderr".equals(stream))) {
+            throw new IOException("Invalid log id or stream.");
+        }
+        Path logFile = getWorkspaceRoot(userId, agentId).resolve(SkillExecutor.EXEC_LOG_DIR).resolve(logId + "." + stream + ".log");
+        if (!Files.exists(logFile)) {
+            throw new IOException("Execution log not found: " + logId);
+        }
+        Files.copy(logFile, os);
+    }
+
+    public String deleteFile(String userId, String agentId, String rawPath) throws IOException {
+        String logicalPath = normalizeLogicalPath(rawPath);
         Path physicalPath = resolveLogicalPath(userId, agentId, logicalPath);
-        storageService.writeLockedVoid(agentId, () -> {
+        storageService.pathWriteLocked("deleteFile", agentId, userId, logicalPath, () -> {
             if (Files.exists(physicalPath)) {
                 storageService.deleteRecursively(physicalPath);
             }
+            if (!logicalPath.startsWith("skills/" + SKILL_CREATOR_DIR)) {
+                Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+                String logicalRoot = workspaceRoot.relativize(physicalPath).toString().replace('\\', '/');
+                fileIndex.remove(workspaceRoot, logicalRoot);
+                searchIndex.remove(workspaceRoot, logicalRoot);
+                if (isOverlay()) whiteoutLower(workspaceRoot, agentId, logicalRoot);
+            }
         });
+        Path workspaceRoot = getWorkspaceRoot(userId, agentId);
+        if (logicalPath.startsWith("skills")) {
+            skillIndex.invalidate(workspaceRoot.resolve("skills"));
+        }
+        invalidateProvisioning(workspaceRoot);
         return "Deleted from workspace: " + logicalPath;
     }
 
+    /**
+     * overlay 模式下删除路径后，若基线中仍有该路径可回落，写入删除标记将其隐藏。
+     * 删除的是技能内的部分文件时保留 (必要时新建) 工作区技能目录并刷新其 mtime，使技能状态显示为 MODIFIED。
+     */
+    private void whiteoutLower(Path workspaceRoot, String agentId, String logicalPath) throws IOException {
+        if (logicalPath.isEmpty() || !overlay.isLowerVisible(workspaceRoot, logicalPath)) return;
+        if (!Files.exists(getBaselineRoot(agentId).resolve(logicalPath))) return;
+        overlay.whiteout(workspaceRoot, logicalPath);
+        String unit = WorkspaceOverlay.unitOf(logicalPath);
+        if (unit != null && unit.startsWith("skills/") && !unit.equals(logicalPath)) {
+            Path skillDir = workspaceRoot.resolve(unit);
+            Files.createDirectories(skillDir);
+            Files.setLastModifiedTime(skillDir, java.nio.file.attribute.FileTime.from(java.time.Instant.now()));
+        }
+    }
+
     private void validateSkillMdPlacement(String logicalPath) {
         if (logicalPath == null) return;
         String normalized = logicalPath.replace('\\', '/');
@@ -755,13 +1453,13 @@ public class SandboxService {
         }
     }
 
-    private void scanAndValidateSkills(ZipInputStream zis, Set<String> skills, Set<String> skillsWithMd) throws IOException {
-        ZipEntry entry;
-        while ((entry = zis.getNextEntry()) != null) {
+    private void scanAndValidateSkills(ZipFile zip, Set<String> skills, Set<String> skillsWithMd) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
             String name = entry.getName().replace('\\', '/');
             // 忽略 macOS 自动生成的冗余目录
             if (name.startsWith("__MACOSX/") || name.contains("/.__")) {
-                zis.closeEntry();
                 continue;
             }
             int slash = name.indexOf('/');
@@ -772,17 +1470,16 @@ public class SandboxService {
             } else if (entry.isDirectory()) {
                 skills.add(name.replace("/", ""));
             }
-            zis.closeEntry();
         }
     }
 
-    private void extractZip(ZipInputStream zis, Path targetDir, String rootToSkip) throws IOException {
-        ZipEntry entry;
-        while ((entry = zis.getNextEntry()) != null) {
+    private void extractZip(ZipFile zip, Path targetDir, String rootToSkip) throws IOException {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
             String name = entry.getName().replace('\\', '/');
             // 忽略 macOS 自动生成的冗余目录
             if (name.startsWith("__MACOSX/") || name.contains("/.__")) {
-                zis.closeEntry();
                 continue;
             }
             if (rootToSkip != null) {
@@ -797,42 +1494,23 @@ public class SandboxService {
             if (entry.isDirectory()) Files.createDirectories(entryPath);
             else {
                 Files.createDirectories(entryPath.getParent());
-                Files.copy(zis, entryPath, StandardCopyOption.REPLACE_EXISTING);
-            }
-            zis.closeEntry();
-        }
-    }
-
-    private void zipDirectory(Path folder, String parentFolder, ZipOutputStream zos) throws IOException {
-        try (Stream<Path> stream = Files.walk(folder)) {
-            Iterator<Path> it = stream.iterator();
-            while (it.hasNext()) {
-                Path path = it.next();
-                if (Files.isDirectory(path)) continue;
-                String zipEntryName = parentFolder + "/" + folder.relativize(path).toString().replace('\\', '/');
-                zos.putNextEntry(new ZipEntry(zipEntryName));
-                Files.copy(path, zos);
-                zos.closeEntry();
+                try (java.io.InputStream is = zip.getInputStream(entry)) {
+                    Files.copy(is, entryPath, StandardCopyOption.REPLACE_EXISTING);
+                }
             }
         }
     }
 
-    private SkillMetadata parseSkillMd(Path skillPath) {
-        Path mdPath = skillPath.resolve("SKILL.md");
-        SkillMetadata meta = new SkillMetadata();
-        meta.setName(skillPath.getFileName().toString());
-        meta.setDescription("No description.");
-        if (Files.exists(mdPath)) {
-            try (BufferedReader reader = Files.newBufferedReader(mdPath, StandardCharsets.UTF_8)) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String trimmed = line.trim().toLowerCase();
-                    if (trimmed.startsWith("name:")) meta.setName(line.substring(line.indexOf(":") + 1).trim());
-                    if (trimmed.startsWith("description:")) meta.setDescription(line.substring(line.indexOf(":") + 1).trim());
+    private void purgeExpiredFiles(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        long cutoff = System.currentTimeMillis() - 24 * 3600 * 1000L;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
                 }
-            } catch (IOException ignored) {}
+            }
         }
-        return meta;
     }
 
     @Scheduled(cron = "0 0 * * * ?")
@@ -849,6 +1527,18 @@ public class SandboxService {
                                 if (System.currentTimeMillis() - lastAccess > 24 * 3600 * 1000) {
                                     log.info("Cleaning up idle workspace: {}", userDir);
                                     storageService.deleteRecursively(userDir);
+                                    provisionGeneration.incrementAndGet();
+                                    provisionedRoots.remove(userDir);
+                                    skillIndex.evict(userDir);
+                                    fileIndex.evict(userDir);
+                                    pythonWorkerPool.evict(userDir);
+                                    searchIndex.evict(userDir);
+                                    overlay.evict(userDir);
+                                    normalizer.evict(userDir.resolve(META_DIR).resolve(NORMALIZED_MARKER));
+                                    syncMetaCache.remove(userDir);
+                                } else {
+                                    purgeExpiredFiles(userDir.resolve(SkillExecutor.EXEC_LOG_DIR));
+                                    purgeExpiredFiles(userDir.resolve(ContentReader.LINE_INDEX_DIR));
                                 }
                             }
                         }
@@ -0,0 +1,458 @@
+package com.example.filesecbox.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 技能压缩包生成：各文件在 fork-join 池中并行压缩，再按顺序写入 ZIP；图片、压缩包、wheel、模型等
+ * 已压缩格式 (以及压缩后不变小的文件) 直接以 STORED 存储。生成的压缩包以「技能名 + 内容清单摘要」为键
+ * 缓存在磁盘上，技能未变化时重复下载直接读取缓存文件，按总字节数淘汰最久未用的压缩包。
+ */
+@Component
+public class SkillArchiver {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SkillArchiver.class);
+
+    // 已压缩或基本不可压缩的文件类型，直接存储
+    private static final Set<String> STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "png", "jpg", "jpeg", "gif", "webp", "ico", "mp3", "mp4", "m4a", "mov", "avi", "mkv", "ogg", "webm", "flac",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "jar", "whl", "egg", "apk", "docx", "xlsx", "pptx",
+            "woff", "woff2", "npz", "pt", "pth", "onnx", "safetensors", "gguf", "tflite", "h5")));
+
+    // 压缩结果超过该大小时落盘暂存，避免并行压缩大文件占满堆内存
+    private static final long IN_MEMORY_LIMIT = 8L * 1024 * 1024;
+
+    // 超出 ZIP32 的条目数或字节数时回退到支持 ZIP64 的 ZipOutputStream
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    // 并行压缩线程数，0 表示与 CPU 核数一致
+    @Value("${app.download.zip.parallelism:0}")
+    private int parallelism;
+
+    // 压缩包缓存的总字节上限，0 表示不缓存
+    @Value("${app.download.archive-cache.max-bytes:1073741824}")
+    private long cacheMaxBytes;
+
+    private ForkJoinPool pool;
+
+    // 技能目录清单的备忘，(size, mtime) 未变的文件不再重新计算摘要
+    private final Map<Path, FileManifest> manifests = Collections.synchronizedMap(new LinkedHashMap<Path, FileManifest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, FileManifest> eldest) {
+            return size() > 1024;
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 生成 (或命中缓存) 技能压缩包并打开其输入流，包内条目以 rootName/ 为前缀。
+     * 应在技能目录的读锁内调用；返回的流读取的是不可变的压缩包文件，可以在锁外写出。
+     */
+    public InputStream open(Path skillDir, String rootName, Path cacheDir) throws IOException {
+        FileManifest manifest = FileManifest.scan(skillDir, manifests.get(skillDir));
+        manifests.put(skillDir, manifest);
+        String key = cacheKey(rootName, manifest.digest());
+        Path cached = cacheDir.resolve(key + ".zip");
+        if (cacheMaxBytes > 0 && Files.exists(cached)) {
+            try {
+                InputStream in = Files.newInputStream(cached);
+                Files.setLastModifiedTime(cached, FileTime.from(Instant.now()));
+                log.info("Skill archive served from cache: {}", rootName);
+                return in;
+            } catch (NoSuchFileException e) {
+                // 恰好被淘汰，重新生成
+            }
+        }
+
+        Files.createDirectories(cacheDir);
+        Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+        long start = System.currentTimeMillis();
+        try {
+            build(skillDir, rootName, manifest, tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        log.info("Skill archive built for {} in {} ms, {} bytes", rootName, System.currentTimeMillis() - start, Files.size(tmp));
+        if (cacheMaxBytes <= 0) {
+            return new FilterInputStream(Files.newInputStream(tmp)) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    Files.deleteIfExists(tmp);
+                }
+            };
+        }
+        Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        InputStream in = Files.newInputStream(cached);
+        evict(cacheDir, cached);
+        return in;
+    }
+
+    private void build(Path skillDir, String rootName, FileManifest manifest, Path target) throws IOException {
+        List<String> paths = new ArrayList<>(manifest.getEntries().keySet());
+        long estimate = 22;
+        for (String rel : paths) {
+            // 本地头 30 + 中央目录头 46 字节，文件名按 UTF-8 最多 3 字节/字符估算
+            estimate += manifest.get(rel).getSize() + 76 + 2L * 3 * (rootName.length() + 1 + rel.length());
+        }
+        if (paths.size() > ZIP32_MAX_ENTRIES || estimate >= ZIP32_LIMIT) {
+            buildSequential(skillDir, rootName, paths, target);
+            return;
+        }
+
+        Path spillDir = target.getParent();
+        Deque<ForkJoinTask<Compressed>> window = new ArrayDeque<>();
+        List<Compressed> written = new ArrayList<>(paths.size());
+        Iterator<String> it = paths.iterator();
+        try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(target), COPY_BUFFER))) {
+            while (it.hasNext() || !window.isEmpty()) {
+                // 限制在途任务数，压缩结果按提交顺序依次写出
+                while (it.hasNext() && window.size() < pool.getParallelism() * 2) {
+                    String rel = it.next();
+                    Path file = skillDir.resolve(rel);
+                    String name = rootName + "/" + rel;
+                    window.add(pool.submit(() -> compress(file, name, spillDir)));
+                }
+                Compressed entry = join(window.poll());
+                try {
+                    entry.offset = out.count;
+                    writeLocalHeader(out, entry);
+                    entry.writeData(out);
+                } finally {
+                    entry.release();
+                }
+                written.add(entry);
+            }
+            long centralStart = out.count;
+            for (Compressed entry : written) {
+                writeCentralHeader(out, entry);
+            }
+            writeEnd(out, written.size(), out.count - centralStart, centralStart);
+        } finally {
+            for (ForkJoinTask<Compressed> pending : window) {
+                try {
+                    join(pending).release();
+                } catch (IOException | RuntimeException ignored) {
+                }
+            }
+        }
+    }
+
+    private void buildSequential(Path skillDir, String rootName, List<String> paths, Path target) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target), COPY_BUFFER))) {
+            for (String rel : paths) {
+                zos.putNextEntry(new ZipEntry(rootName + "/" + rel));
+                Files.copy(skillDir.resolve(rel), zos);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    private static Compressed compress(Path file, String name, Path spillDir) throws IOException {
+        Compressed entry = new Compressed(name, file, Files.getLastModifiedTime(file).toMillis());
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[COPY_BUFFER];
+        if (STORED_EXTENSIONS.contains(extension(name))) {
+            try (InputStream in = Files.newInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, n);
+                    entry.size += n;
+                }
+            }
+            entry.stored(crc.getValue());
+            return entry;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        try {
+            OutputStream sink = memory;
+            byte[] chunk = new byte[COPY_BUFFER];
+            try (InputStream in = Files.newInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, n);
+                    entry.size += n;
+                    deflater.setInput(buffer, 0, n);
+                    while (!deflater.needsInput()) {
+                        int c = deflater.deflate(chunk);
+                        sink.write(chunk, 0, c);
+                        entry.compressedSize += c;
+                    }
+                    if (sink == memory && memory.size() > IN_MEMORY_LIMIT) {
+                        entry.spill = Files.createTempFile(spillDir, "deflate-", ".tmp");
+                        sink = new BufferedOutputStream(Files.newOutputStream(entry.spill), COPY_BUFFER);
+                        memory.writeTo(sink);
+                        memory = null;
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int c = deflater.deflate(chunk);
+                    sink.write(chunk, 0, c);
+                    entry.compressedSize += c;
+                }
+            } finally {
+                if (sink != memory) sink.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            entry.release();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        entry.crc = crc.getValue();
+        if (entry.compressedSize >= entry.size) {
+            // 压缩无收益，改为直接存储
+            entry.release();
+            entry.stored(entry.crc);
+        } else {
+            entry.method = ZipEntry.DEFLATED;
+            entry.data = memory != null ? memory.toByteArray() : null;
+        }
+        return entry;
+    }
+
+    private static Compressed join(ForkJoinTask<Compressed> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    private void evict(Path cacheDir, Path keep) {
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            List<Path> archives = stream.filter(p -> p.getFileName().toString().endsWith(".zip"))
+                    .collect(Collectors.toList());
+            Map<Path, long[]> attrs = new HashMap<>();
+            long total = 0;
+            for (Path archive : archives) {
+                try {
+                    long size = Files.size(archive);
+                    attrs.put(archive, new long[]{size, Files.getLastModifiedTime(archive).toMillis()});
+                    total += size;
+                } catch (IOException ignored) {
+                }
+            }
+            if (total <= cacheMaxBytes) return;
+            List<Path> oldestFirst = new ArrayList<>(attrs.keySet());
+            oldestFirst.sort(Comparator.comparingLong(p -> attrs.get(p)[1]));
+            for (Path archive : oldestFirst) {
+                if (total <= cacheMaxBytes) break;
+                if (archive.equals(keep)) continue;
+                try {
+                    Files.deleteIfExists(archive);
+                    total -= attrs.get(archive)[0];
+                } catch (IOException e) {
+                    log.debug("Failed to evict skill archive {}: {}", archive, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to evict skill archive cache: {}", e.getMessage());
+        }
+    }
+
+    private static String cacheKey(String rootName, String digest) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(rootName.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(digest.getBytes(StandardCharsets.US_ASCII));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String extension(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        return dot > slash ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    // ---- ZIP 结构写出 (小端序) ----
+
+    private static void writeLocalHeader(CountingOutputStream out, Compressed entry) throws IOException {
+        writeInt(out, 0x04034b50);
+        writeShort(out, 20);
+        writeShort(out, 0x0800); // 文件名为 UTF-8
+        writeShort(out, entry.method);
+        writeInt(out, entry.dosTime);
+        writeInt(out, entry.crc);
+        writeInt(out, entry.compressedSize);
+        writeInt(out, entry.size);
+        writeShort(out, entry.name.length);
+        writeShort(out, 0);
+        out.write(entry.name);
+    }
+
+    private static void writeCentralHeader(CountingOutputStream out, Compressed entry) throws IOException {
+        writeInt(out, 0x02014b50);
+        writeShort(out, 20);
+        writeShort(out, 20);
+        writeShort(out, 0x0800);
+        writeShort(out, entry.method);
+        writeInt(out, entry.dosTime);
+        writeInt(out, entry.crc);
+        writeInt(out, entry.compressedSize);
+        writeInt(out, entry.size);
+        writeShort(out, entry.name.length);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeInt(out, 0);
+        writeInt(out, entry.offset);
+        out.write(entry.name);
+    }
+
+    private static void writeEnd(CountingOutputStream out, int entries, long centralSize, long centralStart) throws IOException {
+        writeInt(out, 0x06054b50);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, entries);
+        writeShort(out, entries);
+        writeInt(out, centralSize);
+        writeInt(out, centralStart);
+        writeShort(out, 0);
+    }
+
+    private static void writeShort(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long v) throws IOException {
+        writeShort(out, (int) (v & 0xffff));
+        writeShort(out, (int) ((v >>> 16) & 0xffff));
+    }
+
+    private static long dosTime(long millis) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (t.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (t.getYear() - 1980) << 25) | (t.getMonthValue() << 21) | (t.getDayOfMonth() << 16)
+                | (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() >> 1);
+    }
+
+    /**
+     * 单个条目的压缩结果：DEFLATED 数据在内存 (data) 或暂存文件 (spill) 中，STORED 条目在写出时直接读取源文件。
+     */
+    private static final class Compressed {
+        final byte[] name;
+        final Path source;
+        final long dosTime;
+        int method;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        byte[] data;
+        Path spill;
+
+        Compressed(String name, Path source, long mtime) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.source = source;
+            this.dosTime = dosTime(mtime);
+        }
+
+        void stored(long crc) {
+            this.method = ZipEntry.STORED;
+            this.crc = crc;
+            this.compressedSize = size;
+            this.data = null;
+        }
+
+        void writeData(OutputStream out) throws IOException {
+            if (data != null) {
+                out.write(data);
+                return;
+            }
+            Path from = method == ZipEntry.STORED ? source : spill;
+            long remaining = compressedSize;
+            byte[] buffer = new byte[COPY_BUFFER];
+            try (InputStream in = Files.newInputStream(from)) {
+                int n;
+                while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+            if (remaining != 0) {
+                throw new IOException("File changed while archiving: " + new String(name, StandardCharsets.UTF_8));
+            }
+        }
+
+        void release() {
+            data = null;
+            if (spill != null) {
+                try {
+                    Files.deleteIfExists(spill);
+                } catch (IOException ignored) {
+                }
+                spill = null;
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -1,129 +1,105 @@
 package com.example.filesecbox.service;
 
 import com.example.filesecbox.model.ExecutionResult;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class SkillExecutor {
 
-    @Value("${app.product.root.win:D:/webIde/product}")
-    private String productRootWin;
+    private static final int TIMEOUT_SECONDS = 300; // 5分钟超时
 
-    @Value("${app.product.root.linux:/webIde/product}")
-    private String productRootLinux;
+    private static final boolean IS_WIN = System.getProperty("os.name").toLowerCase().contains("win");
 
-    // 开放的基础指令白名单 (对齐 DESIGN.md)
-    private static final Set<String> ALLOWED_COMMANDS = new HashSet<>(Arrays.asList(
-            "python", "python3", "bash", "sh", "cmd", "ls", "cat", "echo", "grep", "sed",
-            "mkdir", "touch", "cp", "mv", "rm", "tee", "find", "chmod", "xargs", "curl"
-    ));
+    private static final Charset SYS_CHARSET = IS_WIN ? Charset.forName("GBK") : StandardCharsets.UTF_8;
 
-    private static final int TIMEOUT_SECONDS = 300; // 5分钟超时
+    // 子进程保留的环境变量 (Linux)
+    private static final Set<String> SAFE_ENV_VARS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "PATH", "LANG", "LC_ALL", "HOME", "USER", "PWD"
+    )));
 
-    private static final String SKILL_CREATOR_DIR = "skill-creator";
+    // 超出内存上限的完整输出落盘目录 (位于工作区根目录下)
+    static final String EXEC_LOG_DIR = ".exec-logs";
 
-    public ExecutionResult executeInDir(Path workingDir, String commandLine) throws Exception {
-        boolean isWin = System.getProperty("os.name").toLowerCase().contains("win");
-        Charset sysCharset = isWin ? Charset.forName("GBK") : StandardCharsets.UTF_8;
+    private static final int READ_BUFFER_SIZE = 8192;
 
-        // 1. 安全校验：禁止路径穿越
-        if (commandLine.contains("..")) {
-            throw new RuntimeException("Security Error: Path traversal '..' is strictly forbidden.");
-        }
+    // 每个输出流在内存中保留的最大字节数 (头尾各一半)
+    @Value("${app.execute.output.max-bytes:1048576}")
+    private int maxOutputBytes;
 
-        // 2. 指令白名单校验：仅校验首个指令
-        String firstCmd = commandLine.trim().split("\\s+")[0];
-        if (firstCmd.startsWith("\"") && firstCmd.endsWith("\"")) {
-            firstCmd = firstCmd.substring(1, firstCmd.length() - 1);
-        }
-        if (!ALLOWED_COMMANDS.contains(firstCmd)) {
-            throw new RuntimeException("Security Error: Command '" + firstCmd + "' is not allowed.");
-        }
+    // 输出读取方式：pump = 共享输出泵线程轮询所有进程；thread = 每个输出流一个独立线程 (旧模式)
+    @Value("${app.execute.io.mode:pump}")
+    private String ioMode;
+
+    @Autowired
+    private ProcessIoPump ioPump;
+
+    @Autowired
+    private CommandValidator commandValidator;
+
+    @Autowired
+    private PythonWorkerPool pythonWorkerPool;
+
+    // thread 模式下的读缓冲复用池，避免每次执行重新分配
+    private final Queue<byte[]> readBuffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 增量输出回调：每读到一段 stdout / stderr 输出即回调一次，供异步任务流式推送。
+     */
+    public interface OutputListener {
+        void onOutput(String stream, String text);
+    }
+
+    public ExecutionResult executeInDir(Path workingDir, String commandLine) throws Exception {
+        return executeInDir(workingDir, commandLine, null);
+    }
 
-        // 3. 强制路径前缀校验：命令中涉及的任何路径/文件名必须以 skills/ 或 files/ 开头
-        String argsPart = commandLine.trim().substring(firstCmd.length()).trim();
-        if (!argsPart.isEmpty()) {
-            // 增强正则：支持中文、空格、引号包裹的路径解析
-            // 匹配模式：引号内的内容 OR 看起来像路径/文件名的连续字符（支持 Unicode）
-            java.util.regex.Matcher matcher = java.util.regex.Pattern.compile("\"([^\"]+)\"|([^\\s><|&]+)").matcher(argsPart);
-            while (matcher.find()) {
-                String potentialPath = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
-                
-                // 忽略纯数字（版本号）、短指令参数（如 -rf, --v）
-                if (potentialPath.length() < 3 || potentialPath.matches("^-+.*") || potentialPath.matches("^[\\d.]+$")) continue;
-                
-                // 如果片段包含路径分隔符或文件名后缀
-                if (potentialPath.contains("/") || potentialPath.contains("\\") || potentialPath.contains(".")) {
-                    String normalized = potentialPath.replace('\\', '/').toLowerCase();
-                    String productRoot = isWin ? productRootWin : productRootLinux;
-                    String normGlobalCreator = Paths.get(productRoot).resolve(SKILL_CREATOR_DIR).toAbsolutePath().toString().replace("\\", "/").toLowerCase();
-                    
-                    // --- 新增：SKILL.md 深度拦截逻辑 ---
-                    if (normalized.endsWith("/skill.md") || normalized.equals("skill.md")) {
-                        String[] parts = normalized.split("/");
-                        // 必须是 skills/{name}/SKILL.md 格式，长度为 3
-                        if (!normalized.startsWith("skills/") || parts.length != 3) {
-                            throw new RuntimeException("Security Error: 'SKILL.md' is a system reserved file. You can only create/edit it at the root of a skill (e.g., skills/my_skill/SKILL.md).");
-                        }
-                    }
-
-                    boolean isLogicPath = normalized.startsWith("skills/") || normalized.startsWith("files/") ||
-                                        normalized.equals("skills") || normalized.equals("files");
-                    boolean isGlobalCreatorPath = normalized.startsWith(normGlobalCreator);
-
-                    if (!isLogicPath && !isGlobalCreatorPath) {
-                        throw new RuntimeException("Security Error: Path '" + potentialPath + "' is out of operable scope. Must start with 'skills/' or 'files/'.");
-                    }
-
-                    // --- 新增：针对 skill-creator 的写保护 ---
-                    if (isGlobalCreatorPath) {
-                        Set<String> writeCmds = new HashSet<>(Arrays.asList("mkdir", "touch", "cp", "mv", "rm", "tee", "chmod"));
-                        if (writeCmds.contains(firstCmd)) {
-                            throw new RuntimeException("Security Error: Modification of 'skill-creator' is strictly forbidden. Command '" + firstCmd + "' blocked.");
-                        }
-                        // 检查重定向符号
-                        if (commandLine.contains(">") || commandLine.contains(">>")) {
-                            throw new RuntimeException("Security Error: Redirecting output to 'skill-creator' is strictly forbidden.");
-                        }
-                    }
-
-                    // --- 新增：自动创建目录逻辑 ---
-                    try {
-                        String cleanPath = potentialPath.replace('\\', '/');
-                        // 仅当路径包含 Windows 盘符（如 C:）时跳过 resolve，避免 InvalidPathException
-                        // 对于以 / 开头的路径，在 Windows 下 resolve 会被视为当前盘符下的绝对路径，在 Linux 下是绝对路径，通常是安全的
-                        if (cleanPath.contains(":")) {
-                            // 包含盘符的绝对路径不执行自动创建目录逻辑
-                        } else {
-                            Path targetPath = workingDir.resolve(cleanPath).normalize();
-                            Path dirToCreate = cleanPath.contains(".") ? targetPath.getParent() : targetPath;
-                            if (dirToCreate != null && !java.nio.file.Files.exists(dirToCreate)) {
-                                java.nio.file.Files.createDirectories(dirToCreate);
-                            }
-                        }
-                    } catch (Exception ignored) {}
+    public ExecutionResult executeInDir(Path workingDir, String commandLine, OutputListener listener) throws Exception {
+        // 1. 安全校验：路径穿越、指令白名单、路径范围与 skill-creator 写保护
+        CommandValidator.ValidatedCommand validated = commandValidator.validate(commandLine, workingDir);
+
+        // 2. 自动创建指令引用的目录
+        createReferencedDirectories(workingDir, validated.getPathTokens());
+
+        String logId = UUID.randomUUID().toString().replace("-", "");
+        Path logDir = workingDir.resolve(EXEC_LOG_DIR);
+        OutputCapture stdout = new OutputCapture("stdout", maxOutputBytes, logDir.resolve(logId + ".stdout.log"), SYS_CHARSET, listener);
+        OutputCapture stderr = new OutputCapture("stderr", maxOutputBytes, logDir.resolve(logId + ".stderr.log"), SYS_CHARSET, listener);
+
+        // 3. 简单的 Python 脚本调用优先交给常驻解释器池
+        if (pythonWorkerPool.isEnabled()) {
+            PythonWorkerPool.Invocation invocation = pythonWorkerPool.parse(commandLine);
+            if (invocation != null) {
+                Integer exitCode;
+                try {
+                    exitCode = pythonWorkerPool.run(workingDir, invocation, stdout, stderr, TIMEOUT_SECONDS);
+                } catch (Exception e) {
+                    stdout.finish();
+                    stderr.finish();
+                    throw e;
                 }
+                if (exitCode != null) {
+                    stdout.finish();
+                    stderr.finish();
+                    return buildResult(logId, stdout, stderr, exitCode);
+                }
+                // 没有可用的解释器 (此时尚未产生任何输出)：捕获保持未结束，交给下方 bash 继续使用
             }
         }
 
-        // 4. 参数路径校验（物理层）
-        validatePathSecurity(commandLine, workingDir, isWin);
-
         // 4. 构建进程：通过 Shell 包装以支持 > | >> 等操作
         ProcessBuilder pb = new ProcessBuilder();
-        if (isWin) {
+        if (IS_WIN) {
             pb.command("cmd", "/c", commandLine);
         } else {
             pb.command("bash", "-c", commandLine);
@@ -132,12 +108,7 @@ public class SkillExecutor {
         pb.redirectErrorStream(false);
 
         // 5. 环境净化 (Linux)
-        Map<String, String> env = pb.environment();
-        if (!isWin) {
-            Set<String> safeEnvVars = new HashSet<>(Arrays.asList("PATH", "LANG", "LC_ALL", "HOME", "USER", "PWD"));
-            env.keySet().removeIf(key -> !safeEnvVars.contains(key));
-            env.put("PATH", "/usr/local/bin:/usr/bin:/bin");
-        }
+        scrubEnvironment(pb.environment());
 
         Process process;
         try {
@@ -146,70 +117,92 @@ public class SkillExecutor {
             return new ExecutionResult("", "Failed to start process: " + e.getMessage(), 127);
         }
 
-        StringBuilder stdoutBuilder = new StringBuilder();
-        StringBuilder stderrBuilder = new StringBuilder();
-        Thread outThread = new Thread(() -> captureStream(process.getInputStream(), stdoutBuilder, sysCharset));
-        Thread errThread = new Thread(() -> captureStream(process.getErrorStream(), stderrBuilder, sysCharset));
-        outThread.start();
-        errThread.start();
+        ProcessIoPump.Drain outDrain;
+        ProcessIoPump.Drain errDrain;
+        if ("thread".equalsIgnoreCase(ioMode)) {
+            outDrain = captureInThread(process.getInputStream(), stdout);
+            errDrain = captureInThread(process.getErrorStream(), stderr);
+        } else {
+            outDrain = ioPump.register(process, process.getInputStream(), stdout);
+            errDrain = ioPump.register(process, process.getErrorStream(), stderr);
+        }
 
         boolean finished = process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
         if (!finished) {
             process.destroyForcibly();
+            outDrain.await(1000);
+            errDrain.await(1000);
+            stdout.finish();
+            stderr.finish();
             throw new RuntimeException("Execution Timeout: Process killed after " + TIMEOUT_SECONDS + " seconds.");
         }
         
-        outThread.join(1000);
-        errThread.join(1000);
+        outDrain.await(1000);
+        errDrain.await(1000);
+        stdout.finish();
+        stderr.finish();
+        return buildResult(logId, stdout, stderr, process.exitValue());
+    }
+
+    static void scrubEnvironment(Map<String, String> env) {
+        if (IS_WIN) return;
+        env.keySet().removeIf(key -> !SAFE_ENV_VARS.contains(key));
+        env.put("PATH", "/usr/local/bin:/usr/bin:/bin");
+    }
 
-        return new ExecutionResult(
-            stdoutBuilder.toString().trim(),
-            stderrBuilder.toString().trim(),
-            process.exitValue()
+    private ExecutionResult buildResult(String logId, OutputCapture stdout, OutputCapture stderr, int exitCode) {
+        String marker = "...[%d bytes truncated, full output: log_id=" + logId + "]...";
+        ExecutionResult result = new ExecutionResult(
+            stdout.text(marker),
+            stderr.text(marker),
+            exitCode
         );
+        if (stdout.isTruncated() || stderr.isTruncated()) {
+            result.setTruncated(true);
+            result.setLogId(logId);
+        }
+        return result;
+    }
+
+    private ProcessIoPump.Drain captureInThread(InputStream is, OutputCapture capture) {
+        ProcessIoPump.Drain drain = new ProcessIoPump.Drain();
+        Thread thread = new Thread(() -> {
+            captureStream(is, capture);
+            drain.complete();
+        });
+        thread.start();
+        return drain;
     }
 
-    private void captureStream(InputStream is, StringBuilder builder, Charset charset) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, charset))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append(line).append("\n");
+    private void captureStream(InputStream is, OutputCapture capture) {
+        byte[] buffer = readBuffers.poll();
+        if (buffer == null) {
+            buffer = new byte[READ_BUFFER_SIZE];
+        }
+        try (InputStream in = is) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                capture.accept(buffer, 0, n);
             }
-        } catch (IOException ignored) {}
+        } catch (IOException ignored) {
+        } finally {
+            readBuffers.offer(buffer);
+        }
     }
 
-    private void validatePathSecurity(String arg, Path workingDir, boolean isWin) {
-        String productRoot = isWin ? productRootWin : productRootLinux;
-        Path rootPath = Paths.get(productRoot).toAbsolutePath().normalize();
-        String normRoot = rootPath.toString().replace("\\", "/").toLowerCase();
-        String normArg = arg.replace("\\", "/").toLowerCase();
-        
-        // 如果参数中包含产品根路径，则必须被限制在当前的工作目录下，或者是全局工具目录下
-        if (normArg.contains(normRoot)) {
-            // 提取指令中的所有潜在路径片段进行校验
-            java.util.regex.Matcher matcher = java.util.regex.Pattern.compile("\"([^\"]+)\"|([^\\s><|&]+)").matcher(arg);
-            while (matcher.find()) {
-                String potentialPath = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
-                String normPotential = potentialPath.replace('\\', '/').toLowerCase();
-                
-                // 只有当这个片段确实指向 productRoot 相关的物理路径时才深入校验
-                if (normPotential.contains(normRoot)) {
-                    try {
-                        Path targetPath = Paths.get(potentialPath).toAbsolutePath().normalize();
-                        Path creatorPath = rootPath.resolve(SKILL_CREATOR_DIR).normalize();
-                        
-                        boolean inWorkspace = targetPath.startsWith(workingDir.toAbsolutePath().normalize());
-                        boolean inGlobalTools = targetPath.startsWith(creatorPath);
-                        
-                        if (!inWorkspace && !inGlobalTools) {
-                            throw new RuntimeException("Security Error: Accessing path outside workspace scope: " + potentialPath);
-                        }
-                    } catch (Exception e) {
-                        if (e instanceof RuntimeException) throw (RuntimeException) e;
-                        // 忽略无法解析为合法路径的普通参数片段
-                    }
+    private void createReferencedDirectories(Path workingDir, List<String> pathTokens) {
+        for (String token : pathTokens) {
+            try {
+                String cleanPath = token.replace('\\', '/');
+                // 仅当路径包含 Windows 盘符（如 C:）时跳过 resolve，避免 InvalidPathException
+                // 对于以 / 开头的路径，在 Windows 下 resolve 会被视为当前盘符下的绝对路径，在 Linux 下是绝对路径，通常是安全的
+                if (cleanPath.contains(":")) continue;
+                Path targetPath = workingDir.resolve(cleanPath).normalize();
+                Path dirToCreate = cleanPath.contains(".") ? targetPath.getParent() : targetPath;
+                if (dirToCreate != null && !java.nio.file.Files.exists(dirToCreate)) {
+                    java.nio.file.Files.createDirectories(dirToCreate);
                 }
-            }
+            } catch (Exception ignored) {}
         }
     }
 }
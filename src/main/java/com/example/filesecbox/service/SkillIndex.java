@@ -0,0 +1,241 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.SkillMetadata;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 技能元数据内存索引：按 skills 目录缓存各技能的 SKILL.md 解析结果与目录 mtime。
+ * 服务自身的写路径 (写入、编辑、同步、指令执行后) 显式失效；WatchService 只监听各 skills 根目录，感知外部增删技能，
+ * 每个索引目录只占一个 inotify watch。重建时按目录与 SKILL.md 的 mtime 只重新解析发生变化的技能。
+ */
+@Service
+public class SkillIndex {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SkillIndex.class);
+    private static final int MAX_TREES = 4096;
+
+    private final Map<Path, Tree> trees = Collections.synchronizedMap(new LinkedHashMap<Path, Tree>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Tree> eldest) {
+            if (size() > MAX_TREES) {
+                eldest.getValue().cancelWatches();
+                return true;
+            }
+            return false;
+        }
+    });
+    private final Map<WatchKey, Tree> watchOwners = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    @PostConstruct
+    public void init() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(this::watchLoop, "skill-index-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("WatchService unavailable, skill index relies on explicit invalidation only", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * 返回 skills 目录下所有技能目录的索引快照（按目录名排序，只读）。索引有效时不访问磁盘。
+     */
+    public Map<String, SkillEntry> snapshot(Path skillsDir) throws IOException {
+        Tree tree = trees.computeIfAbsent(skillsDir, Tree::new);
+        long version = tree.version.get();
+        Snapshot current = tree.snapshot;
+        if (current != null && current.version == version) {
+            return current.skills;
+        }
+        Map<String, SkillEntry> rebuilt = scan(tree, current != null ? current.skills : Collections.<String, SkillEntry>emptyMap());
+        tree.snapshot = new Snapshot(version, rebuilt);
+        return rebuilt;
+    }
+
+    public void invalidate(Path skillsDir) {
+        Tree tree = trees.get(skillsDir);
+        if (tree != null) {
+            tree.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 移除 root 下所有已索引的目录（如工作区被清理时）。
+     */
+    public void evict(Path root) {
+        synchronized (trees) {
+            Iterator<Map.Entry<Path, Tree>> it = trees.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, Tree> e = it.next();
+                if (e.getKey().startsWith(root)) {
+                    e.getValue().cancelWatches();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 直接解析单个技能目录（不经缓存）。
+     */
+    public SkillEntry describe(Path skillDir) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(skillDir, BasicFileAttributes.class);
+        Path md = skillDir.resolve("SKILL.md");
+        long mdMtime = Files.exists(md) ? Files.getLastModifiedTime(md).toMillis() : -1;
+        return parse(skillDir, attrs.lastModifiedTime().toMillis(), mdMtime);
+    }
+
+    private Map<String, SkillEntry> scan(Tree tree, Map<String, SkillEntry> previous) throws IOException {
+        Map<String, SkillEntry> result = new TreeMap<>();
+        if (!Files.isDirectory(tree.root)) return Collections.unmodifiableMap(result);
+        tree.watch(tree.root);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tree.root)) {
+            for (Path skillDir : stream) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(skillDir, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attrs.isDirectory()) continue;
+                String dirName = skillDir.getFileName().toString();
+                Path md = skillDir.resolve("SKILL.md");
+                long mdMtime = Files.exists(md) ? Files.getLastModifiedTime(md).toMillis() : -1;
+                long dirMtime = attrs.lastModifiedTime().toMillis();
+                SkillEntry old = previous.get(dirName);
+                boolean reusable = old != null && old.dirMtime == dirMtime && old.mdMtime == mdMtime;
+                result.put(dirName, reusable ? old : parse(skillDir, dirMtime, mdMtime));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private SkillEntry parse(Path skillDir, long dirMtime, long mdMtime) {
+        String dirName = skillDir.getFileName().toString();
+        String name = dirName;
+        String description = "No description.";
+        if (mdMtime >= 0) {
+            try (BufferedReader reader = Files.newBufferedReader(skillDir.resolve("SKILL.md"), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String trimmed = line.trim().toLowerCase();
+                    if (trimmed.startsWith("name:")) name = line.substring(line.indexOf(":") + 1).trim();
+                    if (trimmed.startsWith("description:")) description = line.substring(line.indexOf(":") + 1).trim();
+                }
+            } catch (IOException ignored) {}
+        }
+        return new SkillEntry(dirName, name, description, dirMtime, mdMtime);
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Tree owner = watchOwners.get(key);
+            key.pollEvents();
+            if (owner != null) {
+                owner.version.incrementAndGet();
+            }
+            if (!key.reset()) {
+                watchOwners.remove(key);
+                if (owner != null) {
+                    owner.watched.values().remove(key);
+                }
+            }
+        }
+    }
+
+    private final class Tree {
+        private final Path root;
+        private final AtomicLong version = new AtomicLong();
+        private final Map<Path, WatchKey> watched = new ConcurrentHashMap<>();
+        private volatile Snapshot snapshot;
+
+        private Tree(Path root) {
+            this.root = root;
+        }
+
+        private void watch(Path dir) {
+            if (watchService == null || watched.containsKey(dir)) return;
+            try {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watched.put(dir, key);
+                watchOwners.put(key, this);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Failed to watch skill directory: {}", dir, e);
+            }
+        }
+
+        private void cancelWatches() {
+            for (WatchKey key : watched.values()) {
+                watchOwners.remove(key);
+                key.cancel();
+            }
+            watched.clear();
+        }
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final Map<String, SkillEntry> skills;
+
+        private Snapshot(long version, Map<String, SkillEntry> skills) {
+            this.version = version;
+            this.skills = skills;
+        }
+    }
+
+    /**
+     * 单个技能目录的索引项。dirName 为物理目录名，name / description 来自 SKILL.md。
+     */
+    public static final class SkillEntry {
+        private final String dirName;
+        private final String name;
+        private final String description;
+        private final long dirMtime;
+        private final long mdMtime;
+
+        private SkillEntry(String dirName, String name, String description, long dirMtime, long mdMtime) {
+            this.dirName = dirName;
+            this.name = name;
+            this.description = description;
+            this.dirMtime = dirMtime;
+            this.mdMtime = mdMtime;
+        }
+
+        public String getDirName() { return dirName; }
+        public long getDirMtime() { return dirMtime; }
+        public boolean hasSkillMd() { return mdMtime >= 0; }
+
+        public SkillMetadata toMetadata() {
+            SkillMetadata meta = new SkillMetadata();
+            meta.setName(name);
+            meta.setDescription(description);
+            return meta;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.filesecbox.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 技能目录冗余层级 (skills/A/A/ -> skills/A/) 的打平。只在内容进入系统时 (上传、同步、指令执行后) 调用，
+ * 查询路径不再扫描：每个 skills 目录对应一个 normalized 标记文件，记录各技能目录在最近一次检查时的 mtime，
+ * 之后只检查 mtime 发生变化的技能目录。
+ */
+@Component
+public class SkillNormalizer {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SkillNormalizer.class);
+
+    // 标记中记录 skills 目录自身 mtime 的键；"/" 不会是合法的技能名
+    private static final String DIR_KEY = "/";
+
+    @Autowired
+    private StorageService storageService;
+
+    // 标记文件 -> (技能名 -> 检查时的目录 mtime)
+    private final Map<Path, Properties> markers = new ConcurrentHashMap<>();
+
+    /**
+     * 检查 skillsDir 下发生变化的技能目录并打平冗余层级，随后更新标记。
+     * names 为 null 时检查全部技能；否则只检查给定技能，但 skills 目录自身 mtime 变化 (增删了技能) 时仍检查全部。
+     *
+     * @return 是否有技能目录被打平
+     */
+    public boolean normalize(Path skillsDir, Path markerFile, Collection<String> names) throws IOException {
+        if (!Files.isDirectory(skillsDir)) return false;
+        Properties marker = load(markerFile);
+        synchronized (marker) {
+            boolean flattened = false;
+            boolean changed = false;
+            Collection<String> candidates = names;
+            if (candidates == null || !mtime(skillsDir).equals(marker.getProperty(DIR_KEY))) {
+                candidates = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(skillsDir)) {
+                    for (Path entry : stream) {
+                        if (Files.isDirectory(entry)) candidates.add(entry.getFileName().toString());
+                    }
+                }
+                // 已不存在的技能从标记中移除
+                changed = marker.keySet().retainAll(candidates);
+            }
+            for (String skillName : candidates) {
+                Path skillDir = skillsDir.resolve(skillName);
+                if (!Files.isDirectory(skillDir)) {
+                    changed |= marker.remove(skillName) != null;
+                    continue;
+                }
+                if (mtime(skillDir).equals(marker.getProperty(skillName))) continue;
+                flattened |= flatten(skillDir, skillName);
+                marker.setProperty(skillName, mtime(skillDir));
+                changed = true;
+            }
+            String current = mtime(skillsDir);
+            if (changed || !current.equals(marker.getProperty(DIR_KEY))) {
+                marker.setProperty(DIR_KEY, current);
+                store(markerFile, marker);
+            }
+            return flattened;
+        }
+    }
+
+    /**
+     * 标记文件是否存在；不存在说明该 skills 目录从未整体检查过 (如旧版本遗留的数据)。
+     */
+    public boolean hasMarker(Path markerFile) {
+        return markers.containsKey(markerFile) || Files.exists(markerFile);
+    }
+
+    /**
+     * 打平单个技能目录：一级目录没有 SKILL.md 且仅包含唯一的同名子目录时，用子目录替换它。
+     *
+     * @return 是否发生了打平
+     */
+    public boolean flatten(Path skillDir, String skillName) {
+        Path nested = redundantChild(skillDir, skillName);
+        if (nested == null) return false;
+        try {
+            log.info("Physically flattening redundant directory: {}/{}", skillName, skillName);
+            Path tempDir = skillDir.getParent().resolve(skillName + "_tmp_" + System.currentTimeMillis());
+            Files.move(nested, tempDir);
+            storageService.deleteRecursively(skillDir);
+            Files.move(tempDir, skillDir);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to physically flatten directory: {}", skillDir, e);
+            return false;
+        }
+    }
+
+    public void evict(Path markerFile) {
+        markers.remove(markerFile);
+    }
+
+    private Path redundantChild(Path dir, String expectedName) {
+        try {
+            if (!Files.exists(dir) || !Files.isDirectory(dir)) return null;
+            // 判定标准：一级目录没有 SKILL.md，且仅包含唯一的同名子目录 (符合 "A下面没有任何内容")
+            if (Files.exists(dir.resolve("SKILL.md"))) return null;
+            Path nested = dir.resolve(expectedName);
+            if (!Files.exists(nested) || !Files.isDirectory(nested)) return null;
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                Iterator<Path> it = stream.iterator();
+                if (it.hasNext()) {
+                    it.next(); // 跳过第一个 (即 nested)
+                    if (it.hasNext()) return null; // 还有其他东西，不视为冗余
+                }
+            }
+            return nested;
+        } catch (Exception ignored) {}
+        return null;
+    }
+
+    private static String mtime(Path path) throws IOException {
+        return String.valueOf(Files.getLastModifiedTime(path).toMillis());
+    }
+
+    private Properties load(Path markerFile) throws IOException {
+        Properties marker = markers.get(markerFile);
+        if (marker == null) {
+            Properties loaded = new Properties();
+            if (Files.exists(markerFile)) {
+                try (InputStream in = Files.newInputStream(markerFile)) {
+                    loaded.load(in);
+                }
+            }
+            Properties existing = markers.putIfAbsent(markerFile, loaded);
+            marker = existing != null ? existing : loaded;
+        }
+        return marker;
+    }
+
+    private static void store(Path markerFile, Properties marker) throws IOException {
+        Files.createDirectories(markerFile.getParent());
+        Path tmp = markerFile.resolveSibling(markerFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            marker.store(out, "Normalized Skill Directories");
+        }
+        Files.move(tmp, markerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
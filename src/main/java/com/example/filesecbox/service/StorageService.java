@@ -1,83 +1,151 @@
 package com.example.filesecbox.service;
 
+import com.example.filesecbox.model.EditRequest;
+import com.example.filesecbox.model.SyncReport;
+import com.example.filesecbox.monitor.LockMetrics;
+import com.example.filesecbox.service.HierarchicalLockManager.Mode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * 通用文件处理类：负责底层的物理 I/O 操作、安全校验以及全局并发锁管理。
- * 锁粒度：agentId。
+ * 锁粒度：agent（基线操作）-> workspace（用户工作区整体操作）-> path（技能目录 / files 子路径），
+ * 细粒度加锁前在上级节点持有意向锁。
  */
 @Service
 public class StorageService {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(StorageService.class);
-    private final Map<String, ReadWriteLock> locks = new ConcurrentHashMap<>();
+    private static final long READ_TIMEOUT_SECONDS = 5;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+    private static final String READ_BUSY = "Server busy: Read operation timed out. Please try again.";
+    private static final String WRITE_BUSY = "Server busy: Update operation timed out. Please try again.";
 
-    private ReadWriteLock getLock(String agentId) {
-        return locks.computeIfAbsent(agentId, k -> new ReentrantReadWriteLock());
+    private final HierarchicalLockManager lockManager = new HierarchicalLockManager();
+
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    // 仅当文件系统可读取 inode 链接数时才使用硬链接，否则无法判断何时需要断链
+    private static final boolean HARD_LINK_TRACKABLE = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    /**
+     * agent 级共享锁：阻塞整个应用（基线与全部工作区）的写入。
+     */
+    public <T> T readLocked(String operation, String agentId, IOCallable<T> action) throws IOException {
+        return locked(operation, new String[]{agentKey(agentId)}, new Mode[]{Mode.S}, READ_TIMEOUT_SECONDS, READ_BUSY, agentId, action);
     }
 
-    public <T> T readLocked(String agentId, IOCallable<T> action) throws IOException {
-        ReadWriteLock lock = getLock(agentId);
-        try {
-            if (lock.readLock().tryLock(5, java.util.concurrent.TimeUnit.SECONDS)) {
-                try {
-                    return action.call();
-                } finally {
-                    lock.readLock().unlock();
-                }
-            } else {
-                log.warn("Read lock timeout for agent: {}", agentId);
-                throw new IOException("Server busy: Read operation timed out. Please try again.");
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Operation interrupted.");
+    /**
+     * agent 级独占锁：用于基线变更（上传、删除、工作区 -> 基线同步）。
+     */
+    public <T> T writeLocked(String operation, String agentId, IOCallable<T> action) throws IOException {
+        return locked(operation, new String[]{agentKey(agentId)}, new Mode[]{Mode.X}, WRITE_TIMEOUT_SECONDS, WRITE_BUSY, agentId, action);
+    }
+
+    public void writeLockedVoid(String operation, String agentId, IOVoidAction action) throws IOException {
+        writeLocked(operation, agentId, voidCall(action));
+    }
+
+    /**
+     * 工作区级共享锁（agent 上持 IS）：整棵工作区的只读操作，如技能列表、目录遍历。
+     */
+    public <T> T workspaceReadLocked(String operation, String agentId, String userId, IOCallable<T> action) throws IOException {
+        return locked(operation, new String[]{agentKey(agentId), workspaceKey(agentId, userId)},
+                new Mode[]{Mode.IS, Mode.S}, READ_TIMEOUT_SECONDS, READ_BUSY, agentId, action);
+    }
+
+    /**
+     * 工作区级独占锁（agent 上持 IX）：整棵工作区的变更，如基线 -> 工作区同步。
+     */
+    public void workspaceWriteLocked(String operation, String agentId, String userId, IOVoidAction action) throws IOException {
+        locked(operation, new String[]{agentKey(agentId), workspaceKey(agentId, userId)},
+                new Mode[]{Mode.IX, Mode.X}, WRITE_TIMEOUT_SECONDS, WRITE_BUSY, agentId, voidCall(action));
+    }
+
+    /**
+     * 路径级共享锁：逻辑路径归属的技能目录或 files 子路径；路径不足两级时退化为工作区级共享锁。
+     */
+    public <T> T pathReadLocked(String operation, String agentId, String userId, String logicalPath, IOCallable<T> action) throws IOException {
+        String unit = lockUnit(logicalPath);
+        if (unit == null) {
+            return workspaceReadLocked(operation, agentId, userId, action);
         }
+        return locked(operation, new String[]{agentKey(agentId), workspaceKey(agentId, userId), pathKey(agentId, userId, unit)},
+                new Mode[]{Mode.IS, Mode.IS, Mode.S}, READ_TIMEOUT_SECONDS, READ_BUSY, agentId, action);
     }
 
-    public <T> T writeLocked(String agentId, IOCallable<T> action) throws IOException {
-        ReadWriteLock lock = getLock(agentId);
-        try {
-            if (lock.writeLock().tryLock(10, java.util.concurrent.TimeUnit.SECONDS)) {
-                try {
-                    return action.call();
-                } finally {
-                    lock.writeLock().unlock();
-                }
-            } else {
-                log.warn("Write lock timeout for agent: {}", agentId);
-                throw new IOException("Server busy: Update operation timed out. Please try again.");
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Operation interrupted.");
+    /**
+     * 路径级独占锁：同一工作区内不同技能 / 文件的写入互不阻塞；路径不足两级时退化为工作区级独占锁。
+     */
+    public void pathWriteLocked(String operation, String agentId, String userId, String logicalPath, IOVoidAction action) throws IOException {
+        String unit = lockUnit(logicalPath);
+        if (unit == null) {
+            workspaceWriteLocked(operation, agentId, userId, action);
+            return;
         }
+        locked(operation, new String[]{agentKey(agentId), workspaceKey(agentId, userId), pathKey(agentId, userId, unit)},
+                new Mode[]{Mode.IX, Mode.IX, Mode.X}, WRITE_TIMEOUT_SECONDS, WRITE_BUSY, agentId, voidCall(action));
     }
 
-    public void writeLockedVoid(String agentId, IOVoidAction action) throws IOException {
-        ReadWriteLock lock = getLock(agentId);
+    private <T> T locked(String operation, String[] keys, Mode[] modes, long timeoutSeconds, String busyMessage, String agentId, IOCallable<T> action) throws IOException {
+        long recordId = lockMetrics.waitStarted(agentId, keys[keys.length - 1], operation, modes[modes.length - 1].name());
+        HierarchicalLockManager.Held held;
         try {
-            if (lock.writeLock().tryLock(10, java.util.concurrent.TimeUnit.SECONDS)) {
-                try {
-                    action.run();
-                } finally {
-                    lock.writeLock().unlock();
-                }
-            } else {
-                log.warn("Write lock timeout for agent: {}", agentId);
-                throw new IOException("Server busy: Update operation timed out. Please try again.");
-            }
+            held = lockManager.acquire(keys, modes, timeoutSeconds, java.util.concurrent.TimeUnit.SECONDS);
         } catch (InterruptedException e) {
+            lockMetrics.cancelled(recordId);
             Thread.currentThread().interrupt();
             throw new IOException("Operation interrupted.");
         }
+        if (held == null) {
+            lockMetrics.timedOut(recordId);
+            throw new IOException(busyMessage);
+        }
+        lockMetrics.acquired(recordId);
+        try {
+            return action.call();
+        } finally {
+            held.close();
+            lockMetrics.released(recordId);
+        }
+    }
+
+    private static <T> IOCallable<T> voidCall(IOVoidAction action) {
+        return () -> {
+            action.run();
+            return null;
+        };
+    }
+
+    /**
+     * 逻辑路径的加锁单元：规范化后的 skills/{name} 或 files/{name}。
+     * 调用方应传入已规范化的路径；这里再规范化一次兜底，越出工作区的路径退化为工作区级锁。
+     */
+    private static String lockUnit(String logicalPath) {
+        if (logicalPath == null) return null;
+        Path path = Paths.get(logicalPath.replace('\\', '/')).normalize();
+        if (path.isAbsolute() || path.startsWith("..")) return null;
+        String normalized = path.toString().replace('\\', '/');
+        String[] parts = normalized.split("/");
+        if (parts.length < 2 || parts[1].isEmpty()) return null;
+        return parts[0] + "/" + parts[1];
+    }
+
+    private static String agentKey(String agentId) {
+        return agentId;
+    }
+
+    private static String workspaceKey(String agentId, String userId) {
+        return agentId + "/" + userId;
+    }
+
+    private static String pathKey(String agentId, String userId, String unit) {
+        return agentId + "/" + userId + "/" + unit;
     }
 
     /**
@@ -95,56 +163,296 @@ public class StorageService {
         return Files.readAllBytes(path);
     }
 
-    public byte[] readAllBytesFromInputStream(java.io.InputStream is) throws IOException {
-        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-        int nRead;
-        byte[] data = new byte[16384];
-        while ((nRead = is.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
+    /**
+     * 将输入流落盘到临时文件（固定大小缓冲区拷贝），调用方负责删除。
+     */
+    public Path spoolToTempFile(java.io.InputStream is, String prefix) throws IOException {
+        Path tmp = Files.createTempFile(prefix, ".zip");
+        try {
+            Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
         }
-        return buffer.toByteArray();
+        return tmp;
     }
 
     public void writeBytes(Path path, byte[] content, OpenOption... options) throws IOException {
         if (path.getParent() != null) {
             Files.createDirectories(path.getParent());
         }
+        unshare(path);
         Files.write(path, content, options);
     }
 
-    public void deleteRecursively(Path path) throws IOException {
-        if (Files.exists(path)) {
-            FileSystemUtils.deleteRecursively(path);
+    /**
+     * 以硬链接方式构建目录树（写时复制的基础）：目录逐级新建，文件硬链接到源 inode。
+     * 文件系统无法统计链接数（无法安全断链）、跨设备或不支持硬链接时，自动回退为物理拷贝。
+     */
+    public void linkRecursively(Path source, Path target) throws IOException {
+        if (!Files.exists(source)) return;
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path dest = target.resolve(source.relativize(file).toString());
+                Files.deleteIfExists(dest);
+                if (HARD_LINK_TRACKABLE && attrs.isRegularFile()) {
+                    try {
+                        Files.createLink(dest, file);
+                        return FileVisitResult.CONTINUE;
+                    } catch (UnsupportedOperationException | IOException e) {
+                        log.debug("Hard link failed, falling back to copy: {}", file, e);
+                    }
+                }
+                Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 补齐目录树：把 source 下 target 中尚不存在的文件拷贝（link 为 true 时硬链接）过去，已存在的文件保持不变。
+     * skip 对相对路径 (以 / 分隔) 返回 true 时跳过该文件或整个子目录。
+     */
+    public int provisionMissing(Path source, Path target, boolean link, java.util.function.Predicate<String> skip) throws IOException {
+        if (!Files.isDirectory(source)) return 0;
+        int[] count = {0};
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                String rel = source.relativize(dir).toString().replace('\\', '/');
+                if (!rel.isEmpty() && skip.test(rel)) return FileVisitResult.SKIP_SUBTREE;
+                Files.createDirectories(target.resolve(rel));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String rel = source.relativize(file).toString().replace('\\', '/');
+                Path dest = target.resolve(rel);
+                if (skip.test(rel) || Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) return FileVisitResult.CONTINUE;
+                try {
+                    if (link && HARD_LINK_TRACKABLE && attrs.isRegularFile()) {
+                        try {
+                            Files.createLink(dest, file);
+                            count[0]++;
+                            return FileVisitResult.CONTINUE;
+                        } catch (UnsupportedOperationException e) {
+                            log.debug("Hard link failed, falling back to copy: {}", file, e);
+                        }
+                    }
+                    Files.copy(file, dest, StandardCopyOption.COPY_ATTRIBUTES);
+                    count[0]++;
+                } catch (FileAlreadyExistsException e) {
+                    // 并发写入已在工作区生成该文件，以工作区为准
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * 整体覆写前的断链：若文件仍与基线共享 inode，直接解除链接，随后的写入会落在新的私有 inode 上。
+     */
+    public void unshare(Path file) throws IOException {
+        if (linkCount(file) > 1) {
+            Files.delete(file);
         }
     }
 
     /**
-     * 精确编辑逻辑
+     * 写时复制：将目录（或单个文件）下仍共享 inode 的文件复制为私有副本并原子替换，
+     * 用于无法预知具体写入位置的场景（如指令执行）。
+     */
+    public void detachHardLinks(Path root) throws IOException {
+        if (!HARD_LINK_TRACKABLE || !Files.exists(root, LinkOption.NOFOLLOW_LINKS)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && linkCount(file) > 1) {
+                    Path tmp = file.resolveSibling(file.getFileName() + ".cow" + System.nanoTime());
+                    Files.copy(file, tmp, StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 文件级增量同步：按 (size, mtime) 快速比对，mtime 不一致时再比对 SHA-256，
+     * 仅新增 / 替换 / 删除真正发生变化的文件。link 为 true 时以硬链接代替字节拷贝。
      */
-    public void preciseEdit(Path path, String oldStr, String newStr, int expected) throws IOException {
-        if (oldStr == null || oldStr.isEmpty()) {
-            throw new RuntimeException("Security Error: 'old_string' cannot be empty for replacement operation.");
+    public SyncReport syncTree(Path source, Path target, boolean link) throws IOException {
+        return syncTree(source, new FileManifest(), target, new FileManifest(), link);
+    }
+
+    /**
+     * 同上，摘要取自两侧持久化的清单：(size, mtime) 与清单记录一致的文件直接使用记录的摘要，
+     * 只有自上次同步以来发生变化的文件才重新计算。同步完成后两个清单被更新为当前状态，由调用方持久化。
+     */
+    public SyncReport syncTree(Path source, FileManifest sourceManifest, Path target, FileManifest targetManifest, boolean link) throws IOException {
+        long start = System.currentTimeMillis();
+        SyncReport report = new SyncReport();
+        Files.createDirectories(target);
+
+        // 1. 源 -> 目标：新增与替换
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path dest = target.resolve(source.relativize(dir).toString());
+                if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(dest, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(dest);
+                    report.recordDeleted();
+                }
+                Files.createDirectories(dest);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String rel = source.relativize(file).toString().replace('\\', '/');
+                Path dest = target.resolve(rel);
+                if (!Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+                    placeFile(file, dest, link);
+                    recordPlaced(rel, attrs, sourceManifest, targetManifest);
+                    report.recordAdded(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+                BasicFileAttributes destAttrs = Files.readAttributes(dest, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (destAttrs.isDirectory()) {
+                    deleteRecursively(dest);
+                    placeFile(file, dest, link);
+                    recordPlaced(rel, attrs, sourceManifest, targetManifest);
+                    report.recordReplaced(attrs.size());
+                } else if (sameContent(rel, file, attrs, sourceManifest, dest, destAttrs, targetManifest)) {
+                    report.recordUnchanged();
+                } else {
+                    placeFile(file, dest, link);
+                    recordPlaced(rel, attrs, sourceManifest, targetManifest);
+                    report.recordReplaced(attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // 2. 目标中多余的文件与目录：删除
+        Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String rel = target.relativize(file).toString().replace('\\', '/');
+                Path src = source.resolve(rel);
+                if (!Files.exists(src, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(file);
+                    targetManifest.remove(rel);
+                    report.recordDeleted();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (!dir.equals(target) && !Files.exists(source.resolve(target.relativize(dir).toString()), LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        return report;
+    }
+
+    private boolean sameContent(String rel, Path src, BasicFileAttributes srcAttrs, FileManifest srcManifest,
+                                Path dest, BasicFileAttributes destAttrs, FileManifest destManifest) throws IOException {
+        if (srcAttrs.size() != destAttrs.size()) return false;
+        if (srcAttrs.fileKey() != null && srcAttrs.fileKey().equals(destAttrs.fileKey())) return true;
+        if (srcAttrs.lastModifiedTime().equals(destAttrs.lastModifiedTime())) return true;
+        if (!manifestHash(rel, src, srcAttrs, srcManifest).equals(manifestHash(rel, dest, destAttrs, destManifest))) return false;
+        // 内容一致仅 mtime 漂移：对齐 mtime，下次同步直接命中快速路径
+        Files.setLastModifiedTime(dest, srcAttrs.lastModifiedTime());
+        destManifest.put(rel, new FileManifest.Entry(destAttrs.size(), srcAttrs.lastModifiedTime().toMillis(), srcManifest.get(rel).getSha256()));
+        return true;
+    }
+
+    /**
+     * 清单中 (size, mtime) 仍一致时直接返回记录的摘要，否则重新计算并写回清单。
+     */
+    private static String manifestHash(String rel, Path file, BasicFileAttributes attrs, FileManifest manifest) throws IOException {
+        long mtime = attrs.lastModifiedTime().toMillis();
+        FileManifest.Entry entry = manifest.get(rel);
+        if (entry != null && entry.getSize() == attrs.size() && entry.getMtime() == mtime) {
+            return entry.getSha256();
         }
-        
-        String content = new String(Files.readAllBytes(path), java.nio.charset.StandardCharsets.UTF_8);
-        
-        // 计算匹配次数
-        int count = 0;
-        int index = 0;
-        while ((index = content.indexOf(oldStr, index)) != -1) {
-            count++;
-            index += oldStr.length();
+        String sha = FileManifest.hash(file);
+        manifest.put(rel, new FileManifest.Entry(attrs.size(), mtime, sha));
+        return sha;
+    }
+
+    /**
+     * 放置后的目标文件与源文件内容、mtime 一致 (拷贝保留属性或硬链接)：源清单中的记录仍有效时直接沿用，否则移除目标的旧记录留待下次计算。
+     */
+    private static void recordPlaced(String rel, BasicFileAttributes srcAttrs, FileManifest sourceManifest, FileManifest targetManifest) {
+        FileManifest.Entry entry = sourceManifest.get(rel);
+        if (entry != null && entry.getSize() == srcAttrs.size() && entry.getMtime() == srcAttrs.lastModifiedTime().toMillis()) {
+            targetManifest.put(rel, entry);
+        } else {
+            targetManifest.remove(rel);
         }
+    }
 
-        if (count != expected) {
-            throw new RuntimeException(String.format(
-                "Edit Mismatch: '%s' found %d times, but expected %d times. Please refine your search string.",
-                oldStr, count, expected
-            ));
+    /**
+     * 以临时文件 + 原子替换的方式放置文件，目标已存在时不会出现半写状态。
+     */
+    private void placeFile(Path file, Path dest, boolean link) throws IOException {
+        Path tmp = dest.resolveSibling(dest.getFileName() + ".sync" + System.nanoTime());
+        boolean linked = false;
+        if (link && HARD_LINK_TRACKABLE) {
+            try {
+                Files.createLink(tmp, file);
+                linked = true;
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Hard link failed, falling back to copy: {}", file, e);
+            }
         }
+        if (!linked) {
+            Files.copy(file, tmp, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static boolean hardLinksSupported() {
+        return HARD_LINK_TRACKABLE;
+    }
+
+    private int linkCount(Path file) {
+        if (!HARD_LINK_TRACKABLE) return 1;
+        try {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) return 1;
+            return ((Number) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS)).intValue();
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return 1;
+        }
+    }
 
-        String newContent = content.replace(oldStr, newStr);
-        Files.write(path, newContent.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    public void deleteRecursively(Path path) throws IOException {
+        if (Files.exists(path)) {
+            FileSystemUtils.deleteRecursively(path);
+        }
+    }
+
+    /**
+     * 在一趟扫描中对同一文件应用多个编辑：各编辑都针对原始内容匹配，次数全部符合预期才原子替换文件。
+     */
+    public void preciseEdit(Path path, java.util.List<EditRequest> edits) throws IOException {
+        ByteEditor.apply(path, edits);
     }
 
     @FunctionalInterface
@@ -0,0 +1,275 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.FileEntry;
+import com.example.filesecbox.model.FileListPage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作区文件索引：按工作区在内存中维护 skills/ 与 files/ 下全部文件的有序清单 (逻辑路径 -> 大小、mtime)，
+ * 目录清单直接从索引分页返回，不再逐次遍历目录树。
+ * write / edit / upload / delete 经由 API 时增量更新；指令执行、同步等无法预知改动范围的操作将索引标记为过期，
+ * 下次查询时重建。后台定期对仍在使用的索引做一次全量校准，长时间未访问的索引被回收。
+ * 重建期间发生的增量更新会被记录并在切换前重放，不会丢失。
+ */
+@Component
+public class WorkspaceFileIndex {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(WorkspaceFileIndex.class);
+
+    private static final String[] INDEXED_ROOTS = {"skills", "files"};
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Map<Path, Index> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 分页列出 logicalPrefix (如 files、skills/demo) 下的文件。
+     * @param glob   可选，按逻辑路径匹配的 glob，如 {@code skills/**.py}
+     * @param cursor 上一页返回的 next_cursor，首页为 null
+     */
+    public FileListPage list(Path workspaceRoot, String logicalPrefix, String glob, String cursor, int limit) throws IOException {
+        Index index = indexes.computeIfAbsent(workspaceRoot, k -> new Index());
+        index.lastAccess = System.currentTimeMillis();
+        if (index.stale) {
+            rebuild(workspaceRoot, index, false);
+        }
+        return page(index.entries, logicalPrefix, glob, cursor, limit);
+    }
+
+    /**
+     * 不走索引，直接遍历 physicalRoot 生成清单 (用于全局 skill-creator 等不属于工作区的目录)。
+     */
+    public FileListPage listDirectory(Path physicalRoot, String logicalRoot, String glob, String cursor, int limit) throws IOException {
+        ConcurrentSkipListMap<String, long[]> entries = new ConcurrentSkipListMap<>();
+        walk(physicalRoot, logicalRoot, entries);
+        return page(entries, logicalRoot, glob, cursor, limit);
+    }
+
+    /**
+     * 文件经由 API 写入后刷新其条目；索引尚未建立时无需处理。
+     */
+    public void upsert(Path workspaceRoot, String logicalPath, Path physicalPath) {
+        Index index = indexes.get(workspaceRoot);
+        if (index == null) return;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(physicalPath, BasicFileAttributes.class);
+            if (attrs.isRegularFile()) {
+                index.apply(new Op(normalize(logicalPath), attrs.size(), attrs.lastModifiedTime().toMillis()));
+                return;
+            }
+        } catch (IOException e) {
+            // 文件已不存在，按删除处理
+        }
+        remove(workspaceRoot, logicalPath);
+    }
+
+    /**
+     * 删除某个逻辑路径及其下的全部条目。
+     */
+    public void remove(Path workspaceRoot, String logicalPath) {
+        Index index = indexes.get(workspaceRoot);
+        if (index == null) return;
+        index.apply(new Op(normalize(logicalPath)));
+    }
+
+    /**
+     * 工作区发生了范围未知的改动，下次查询时重建。
+     */
+    public void invalidate(Path workspaceRoot) {
+        Index index = indexes.get(workspaceRoot);
+        if (index != null) index.stale = true;
+    }
+
+    public void evict(Path workspaceRoot) {
+        indexes.remove(workspaceRoot);
+    }
+
+    @Scheduled(fixedDelayString = "${app.files.index.reconcile-ms:300000}")
+    public void reconcile() {
+        long idleCutoff = System.currentTimeMillis() - IDLE_MILLIS;
+        for (Map.Entry<Path, Index> e : indexes.entrySet()) {
+            Path workspaceRoot = e.getKey();
+            Index index = e.getValue();
+            if (index.lastAccess < idleCutoff || !Files.isDirectory(workspaceRoot)) {
+                indexes.remove(workspaceRoot, index);
+                continue;
+            }
+            try {
+                rebuild(workspaceRoot, index, true);
+            } catch (IOException ex) {
+                log.warn("Failed to reconcile file index for {}: {}", workspaceRoot, ex.getMessage());
+            }
+        }
+    }
+
+    private void rebuild(Path workspaceRoot, Index index, boolean force) throws IOException {
+        synchronized (index.buildLock) {
+            if (!index.stale && !force) return;
+            synchronized (index) {
+                index.stale = false;
+                index.pending = new ArrayList<>();
+            }
+            ConcurrentSkipListMap<String, long[]> fresh = new ConcurrentSkipListMap<>();
+            try {
+                for (String root : INDEXED_ROOTS) {
+                    walk(workspaceRoot.resolve(root), root, fresh);
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (index) {
+                    index.pending = null;
+                    index.stale = true;
+                }
+                throw e;
+            }
+            synchronized (index) {
+                for (Op op : index.pending) {
+                    op.applyTo(fresh);
+                }
+                index.pending = null;
+                index.entries = fresh;
+            }
+        }
+    }
+
+    static void walk(Path physicalRoot, String logicalRoot, Map<String, long[]> into) throws IOException {
+        if (!Files.exists(physicalRoot)) return;
+        Files.walkFileTree(physicalRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isSymbolicLink()) {
+                    try {
+                        attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+                if (attrs.isRegularFile()) {
+                    String rel = physicalRoot.relativize(file).toString().replace('\\', '/');
+                    String logical = rel.isEmpty() ? logicalRoot : logicalRoot + "/" + rel;
+                    into.put(logical, new long[]{attrs.size(), attrs.lastModifiedTime().toMillis()});
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // 遍历过程中被删除的文件直接跳过
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static FileListPage page(NavigableMap<String, long[]> entries, String logicalPrefix, String glob, String cursor, int limit) {
+        String prefix = normalize(logicalPrefix);
+        PathMatcher matcher = (glob == null || glob.isEmpty()) ? null : FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        String after = decodeCursor(cursor);
+
+        // prefix 本身 (单个文件) 以及 prefix/ 下的全部条目
+        NavigableMap<String, long[]> scope = new TreeMap<>();
+        long[] self = entries.get(prefix);
+        if (self != null) scope.put(prefix, self);
+        NavigableMap<String, long[]> view = entries.subMap(prefix + "/", true, prefix + "0", false);
+        if (after != null) {
+            if (after.compareTo(prefix) >= 0) scope.remove(prefix);
+            view = view.tailMap(after, false);
+        }
+
+        List<FileEntry> items = new ArrayList<>();
+        String last = null;
+        boolean more = false;
+        for (NavigableMap<String, long[]> part : Arrays.asList(scope, view)) {
+            for (Map.Entry<String, long[]> e : part.entrySet()) {
+                if (matcher != null && !matcher.matches(Paths.get(e.getKey()))) continue;
+                if (items.size() >= limit) {
+                    more = true;
+                    break;
+                }
+                long[] v = e.getValue();
+                items.add(new FileEntry(e.getKey(), v[0], formatTime(v[1])));
+                last = e.getKey();
+            }
+            if (more) break;
+        }
+        return new FileListPage(items, more ? encodeCursor(last) : null);
+    }
+
+    private static String normalize(String logicalPath) {
+        String normalized = logicalPath.replace('\\', '/');
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    static String encodeCursor(String path) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+
+    private static String formatTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(TIME_FORMAT);
+    }
+
+    private static final class Index {
+        final Object buildLock = new Object();
+        volatile ConcurrentSkipListMap<String, long[]> entries = new ConcurrentSkipListMap<>();
+        volatile boolean stale = true;
+        volatile long lastAccess = System.currentTimeMillis();
+        // 重建期间的增量更新，切换到新索引前重放 (受 this 保护)
+        List<Op> pending;
+
+        synchronized void apply(Op op) {
+            op.applyTo(entries);
+            if (pending != null) pending.add(op);
+        }
+    }
+
+    /**
+     * 增量更新：写入 (size >= 0) 或删除整个子树 (size < 0)。
+     */
+    private static final class Op {
+        final String path;
+        final long size;
+        final long mtime;
+
+        Op(String path, long size, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        Op(String path) {
+            this(path, -1, 0);
+        }
+
+        void applyTo(ConcurrentSkipListMap<String, long[]> entries) {
+            if (size >= 0) {
+                entries.put(path, new long[]{size, mtime});
+                return;
+            }
+            entries.remove(path);
+            entries.subMap(path + "/", true, path + "0", false).clear();
+        }
+    }
+}
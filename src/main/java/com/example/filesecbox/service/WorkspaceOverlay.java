@@ -0,0 +1,193 @@
+package com.example.filesecbox.service;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * overlay 供给模式下的工作区层状态。工作区只保存用户真正写过的文件，其余路径读取时回落到基线；
+ * 这里记录两类信息：
+ * <ul>
+ *     <li>删除标记 (whiteout)：用户删除了基线中存在的路径，该路径及其子路径不再回落；</li>
+ *     <li>已物化单元：技能目录 (skills/&lt;name&gt;) 或 files 已被整体补齐到工作区 (如指令执行前)，此后以工作区为准，不再回落。</li>
+ * </ul>
+ * 状态持久化在工作区 .meta/overlay.properties，内存中按工作区缓存。
+ */
+@Component
+public class WorkspaceOverlay {
+
+    static final String STATE_FILE = "overlay.properties";
+    private static final String META_DIR = ".meta";
+    private static final String WHITEOUT = "whiteout.";
+    private static final String MATERIALIZED = "materialized.";
+
+    private final Map<Path, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * 逻辑路径所属的物化单元：files/... 属于 files，skills/a/... 属于 skills/a；skills 本身不属于任何单元。
+     */
+    public static String unitOf(String logicalPath) {
+        String[] parts = logicalPath.split("/");
+        if (parts[0].equals("files")) return "files";
+        if (parts[0].equals("skills") && parts.length >= 2 && !parts[1].isEmpty()) return "skills/" + parts[1];
+        return null;
+    }
+
+    /**
+     * 工作区中不存在的 logicalPath 是否应回落到基线：未被删除标记覆盖，且所属单元尚未物化。
+     */
+    public boolean isLowerVisible(Path workspaceRoot, String logicalPath) throws IOException {
+        return lowerFilter(workspaceRoot).test(logicalPath);
+    }
+
+    /**
+     * 同 {@link #isLowerVisible}，供清单合并、检索等需要逐条判断的场景复用。
+     */
+    public Predicate<String> lowerFilter(Path workspaceRoot) throws IOException {
+        State state = state(workspaceRoot);
+        return logicalPath -> {
+            synchronized (state) {
+                String unit = unitOf(logicalPath);
+                if (unit != null && state.materialized.contains(unit)) return false;
+                return !state.coveredByWhiteout(logicalPath);
+            }
+        };
+    }
+
+    public boolean isMaterialized(Path workspaceRoot, String unit) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            return state.materialized.contains(unit);
+        }
+    }
+
+    /**
+     * 单元下是否存在删除标记 (即用户对该单元做过删除)。
+     */
+    public boolean hasWhiteouts(Path workspaceRoot, String unit) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            return state.whiteouts.contains(unit) || !state.whiteouts.subSet(unit + "/", true, unit + "0", false).isEmpty();
+        }
+    }
+
+    /**
+     * 标记 logicalPath 已删除；其下已有的删除标记被合并。
+     */
+    public void whiteout(Path workspaceRoot, String logicalPath) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            state.whiteouts.subSet(logicalPath + "/", true, logicalPath + "0", false).clear();
+            state.whiteouts.add(logicalPath);
+            state.store(workspaceRoot);
+        }
+    }
+
+    /**
+     * 写入 logicalPath 后清除其自身及子路径上的删除标记；祖先目录上的标记保留，基线中的兄弟文件仍不回落。
+     */
+    public void clearWhiteouts(Path workspaceRoot, String logicalPath) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            if (state.clearUnder(logicalPath)) state.store(workspaceRoot);
+        }
+    }
+
+    /**
+     * 单元已整体补齐到工作区，此后以工作区为准，其下的删除标记不再需要。
+     */
+    public void markMaterialized(Path workspaceRoot, String unit) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            state.materialized.add(unit);
+            state.clearUnder(unit);
+            state.store(workspaceRoot);
+        }
+    }
+
+    /**
+     * 丢弃单元在工作区层的全部状态，使其重新完全回落到基线 (工作区目录由调用方删除)。
+     */
+    public void reset(Path workspaceRoot, String unit) throws IOException {
+        State state = state(workspaceRoot);
+        synchronized (state) {
+            boolean changed = state.materialized.remove(unit);
+            changed |= state.clearUnder(unit);
+            if (changed) state.store(workspaceRoot);
+        }
+    }
+
+    public void evict(Path workspaceRoot) {
+        states.remove(workspaceRoot);
+    }
+
+    private State state(Path workspaceRoot) throws IOException {
+        State state = states.get(workspaceRoot);
+        if (state == null) {
+            State loaded = State.load(workspaceRoot);
+            State existing = states.putIfAbsent(workspaceRoot, loaded);
+            state = existing != null ? existing : loaded;
+        }
+        return state;
+    }
+
+    private static final class State {
+        final TreeSet<String> whiteouts = new TreeSet<>();
+        final Set<String> materialized = new HashSet<>();
+
+        static State load(Path workspaceRoot) throws IOException {
+            State state = new State();
+            Path file = workspaceRoot.resolve(META_DIR).resolve(STATE_FILE);
+            if (!Files.exists(file)) return state;
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            }
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(WHITEOUT)) state.whiteouts.add(key.substring(WHITEOUT.length()));
+                else if (key.startsWith(MATERIALIZED)) state.materialized.add(key.substring(MATERIALIZED.length()));
+            }
+            return state;
+        }
+
+        boolean coveredByWhiteout(String logicalPath) {
+            String path = logicalPath;
+            while (true) {
+                if (whiteouts.contains(path)) return true;
+                int slash = path.lastIndexOf('/');
+                if (slash < 0) return false;
+                path = path.substring(0, slash);
+            }
+        }
+
+        boolean clearUnder(String logicalPath) {
+            boolean changed = whiteouts.remove(logicalPath);
+            SortedSet<String> nested = whiteouts.subSet(logicalPath + "/", true, logicalPath + "0", false);
+            changed |= !nested.isEmpty();
+            nested.clear();
+            return changed;
+        }
+
+        void store(Path workspaceRoot) throws IOException {
+            Properties props = new Properties();
+            for (String path : whiteouts) props.setProperty(WHITEOUT + path, "");
+            for (String unit : materialized) props.setProperty(MATERIALIZED + unit, "");
+            Path metaDir = workspaceRoot.resolve(META_DIR);
+            Files.createDirectories(metaDir);
+            Path file = metaDir.resolve(STATE_FILE);
+            Path tmp = metaDir.resolve(STATE_FILE + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "Workspace Overlay State");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,760 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.SearchHit;
+import com.example.filesecbox.model.SearchResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 工作区全文检索索引：按工作区在内存中维护 skills/ 与 files/ 下文本文件的 trigram 倒排表
+ * (三字节组 -> 包含它的文件)。查询先从字面量 / 正则中提取必然出现的 trigram，求交得到候选文件，
+ * 再只对候选文件逐行匹配，避免每次全量扫描。
+ * write / edit / upload / delete 经由 API 时增量更新；指令执行、同步等范围未知的改动将索引标记为过期，
+ * 下次查询时按 大小 + mtime 比对，只重新分词发生变化的文件。
+ * 二进制文件不参与检索；超过 app.search.max-file-bytes 的文本文件不建索引，查询时总作为候选逐行扫描。
+ * 所有工作区的倒排表条目合计超过 app.search.max-postings 时，按最近访问时间淘汰其他工作区的索引。
+ * 建立 / 校准索引计入查询时限：超时未分词的文件暂作为候选逐行扫描，索引保持过期，后续查询继续分词。
+ */
+@Component
+public class WorkspaceSearchIndex {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(WorkspaceSearchIndex.class);
+
+    private static final String[] INDEXED_ROOTS = {"skills", "files"};
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // 与 git / grep 一致：前 8000 字节中出现 NUL 即视为二进制
+    private static final int BINARY_SNIFF_BYTES = 8000;
+    // 单条命中返回的最大字符数
+    private static final int MAX_HIT_CHARS = 500;
+    // 失效文档超过该数量且多于存活文档时重新编号，回收倒排表空间
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    // 参与建索引的单个文件最大字节数
+    @Value("${app.search.max-file-bytes:1048576}")
+    private long maxFileBytes;
+
+    // 单次查询的最长耗时 (毫秒)，超时返回已找到的部分结果与续查游标
+    @Value("${app.search.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // 所有工作区倒排表合计的最大条目数 (每条约 4 字节)
+    @Value("${app.search.max-postings:20000000}")
+    private long maxPostings;
+
+    private final Map<Path, Index> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 在 logicalPrefix (如 files、skills/demo) 下检索。
+     * @param regex      query 是否为 Java 正则，否则按字面量匹配
+     * @param ignoreCase 是否忽略大小写
+     * @param cursor     上一页返回的 next_cursor，首页为 null
+     */
+    public SearchResult search(Path workspaceRoot, String logicalPrefix, String query, boolean regex, boolean ignoreCase,
+                               String cursor, int limit) throws IOException {
+        return search(workspaceRoot, null, null, logicalPrefix, query, regex, ignoreCase, cursor, limit);
+    }
+
+    /**
+     * overlay 模式：同时检索工作区 (上层) 与基线 (下层)。下层文件仅在上层不存在该路径、且 lowerVisible 为真时参与。
+     */
+    public SearchResult search(Path workspaceRoot, Path baselineRoot, Predicate<String> lowerVisible, String logicalPrefix,
+                               String query, boolean regex, boolean ignoreCase, String cursor, int limit) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        LineMatcher matcher = compile(query, regex, ignoreCase);
+        int[] required = requiredTrigrams(query, regex, ignoreCase);
+        String prefix = normalize(logicalPrefix);
+        Index upper = open(workspaceRoot, deadline);
+        TreeMap<String, Path> candidates = new TreeMap<>();
+        for (String path : upper.candidates(required, prefix)) {
+            candidates.put(path, workspaceRoot);
+        }
+        // 尚有未分词的文件时，扫描前需嗅探二进制
+        boolean pending = upper.stale;
+        if (baselineRoot != null) {
+            Index lower = open(baselineRoot, deadline);
+            for (String path : lower.candidates(required, prefix)) {
+                if (!candidates.containsKey(path) && !upper.contains(path) && lowerVisible.test(path)) {
+                    candidates.put(path, baselineRoot);
+                }
+            }
+            pending |= lower.stale;
+            enforceBudget(workspaceRoot, baselineRoot);
+        } else {
+            enforceBudget(workspaceRoot);
+        }
+        return scan(new ArrayList<>(candidates.keySet()), p -> candidates.get(p).resolve(p), matcher, cursor, limit,
+                pending, deadline);
+    }
+
+    /**
+     * 不走索引，直接逐行扫描 physicalRoot (用于全局 skill-creator 等不属于工作区的目录)。
+     */
+    public SearchResult searchDirectory(Path physicalRoot, String logicalRoot, String query, boolean regex, boolean ignoreCase,
+                                        String cursor, int limit) throws IOException {
+        LineMatcher matcher = compile(query, regex, ignoreCase);
+        TreeMap<String, long[]> entries = new TreeMap<>();
+        WorkspaceFileIndex.walk(physicalRoot, logicalRoot, entries);
+        String prefix = logicalRoot + "/";
+        // physicalRoot 本身是文件时，唯一的条目就是 logicalRoot
+        return scan(new ArrayList<>(entries.keySet()),
+                p -> p.equals(logicalRoot) ? physicalRoot : physicalRoot.resolve(p.substring(prefix.length())),
+                matcher, cursor, limit, true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    /**
+     * 文件经由 API 写入后重新分词；索引尚未建立时无需处理。
+     */
+    public void upsert(Path workspaceRoot, String logicalPath, Path physicalPath) {
+        Index index = indexes.get(workspaceRoot);
+        if (index == null) return;
+        String path = normalize(logicalPath);
+        Doc doc;
+        try {
+            doc = tokenize(path, physicalPath);
+        } catch (IOException e) {
+            index.remove(path);
+            return;
+        }
+        index.put(doc);
+    }
+
+    /**
+     * 删除某个逻辑路径及其下的全部文档。
+     */
+    public void remove(Path workspaceRoot, String logicalPath) {
+        Index index = indexes.get(workspaceRoot);
+        if (index != null) index.remove(normalize(logicalPath));
+    }
+
+    /**
+     * 工作区发生了范围未知的改动，下次查询时增量校准。
+     */
+    public void invalidate(Path workspaceRoot) {
+        Index index = indexes.get(workspaceRoot);
+        if (index != null) index.stale = true;
+    }
+
+    public void evict(Path workspaceRoot) {
+        indexes.remove(workspaceRoot);
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long idleCutoff = System.currentTimeMillis() - IDLE_MILLIS;
+        indexes.entrySet().removeIf(e -> e.getValue().lastAccess < idleCutoff || !Files.isDirectory(e.getKey()));
+    }
+
+    private Index open(Path root, long deadline) throws IOException {
+        Index index = indexes.computeIfAbsent(root, k -> new Index());
+        index.lastAccess = System.currentTimeMillis();
+        if (index.stale) {
+            refresh(root, index, deadline);
+        }
+        return index;
+    }
+
+    /**
+     * 倒排表总条目超过上限时，按最近访问时间淘汰索引；本次查询正在使用的索引除外。
+     */
+    private void enforceBudget(Path... inUse) {
+        long total = 0;
+        for (Index index : indexes.values()) total += index.entries;
+        if (total <= maxPostings) return;
+        List<Path> protectedRoots = Arrays.asList(inUse);
+        List<Map.Entry<Path, Index>> byAccess = new ArrayList<>(indexes.entrySet());
+        byAccess.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        for (Map.Entry<Path, Index> e : byAccess) {
+            if (total <= maxPostings) break;
+            if (protectedRoots.contains(e.getKey())) continue;
+            if (indexes.remove(e.getKey(), e.getValue())) {
+                total -= e.getValue().entries;
+                log.info("Search index evicted for {} to stay within {} postings", e.getKey(), maxPostings);
+            }
+        }
+    }
+
+    private void refresh(Path workspaceRoot, Index index, long deadline) throws IOException {
+        synchronized (index.refreshLock) {
+            if (!index.stale) return;
+            index.stale = false;
+            try {
+                Map<String, long[]> current = new HashMap<>();
+                for (String root : INDEXED_ROOTS) {
+                    WorkspaceFileIndex.walk(workspaceRoot.resolve(root), root, current);
+                }
+                List<String> removed = new ArrayList<>();
+                List<String> changed = new ArrayList<>();
+                index.diff(current, removed, changed);
+                for (String path : removed) {
+                    index.removeExact(path);
+                }
+                // 分词在锁外进行，期间查询仍可使用旧文档
+                int deferred = 0;
+                for (String path : changed) {
+                    if (System.nanoTime() > deadline) {
+                        // 超时：剩余文件先作为未建索引的候选 (size 记为 -1，下次校准必然重新分词)
+                        index.put(new Doc(path, -1, current.get(path)[1], Doc.UNINDEXED, null));
+                        deferred++;
+                        continue;
+                    }
+                    try {
+                        index.put(tokenize(path, workspaceRoot.resolve(path)));
+                    } catch (NoSuchFileException e) {
+                        index.removeExact(path);
+                    }
+                }
+                if (deferred > 0) {
+                    index.stale = true;
+                }
+                if (!removed.isEmpty() || !changed.isEmpty()) {
+                    log.info("Search index refreshed for {}: {} changed, {} removed, {} deferred",
+                            workspaceRoot, changed.size() - deferred, removed.size(), deferred);
+                }
+            } catch (IOException | RuntimeException e) {
+                index.stale = true;
+                throw e;
+            }
+        }
+    }
+
+    private Doc tokenize(String path, Path file) throws IOException {
+        long size = Files.size(file);
+        long mtime = Files.getLastModifiedTime(file).toMillis();
+        if (size > maxFileBytes) {
+            byte[] head = new byte[BINARY_SNIFF_BYTES];
+            int n;
+            try (InputStream in = Files.newInputStream(file)) {
+                n = readFully(in, head);
+            }
+            return new Doc(path, size, mtime, isBinary(head, n) ? Doc.BINARY : Doc.UNINDEXED, null);
+        }
+        byte[] content = Files.readAllBytes(file);
+        if (isBinary(content, content.length)) {
+            return new Doc(path, size, mtime, Doc.BINARY, null);
+        }
+        return new Doc(path, size, mtime, Doc.INDEXED, trigrams(content));
+    }
+
+    private SearchResult scan(List<String> candidates, Function<String, Path> resolver, LineMatcher matcher,
+                              String cursor, int limit, boolean sniffBinary, long deadline) throws IOException {
+        String[] after = decodeCursor(cursor);
+        List<SearchHit> hits = new ArrayList<>();
+        int scanned = 0;
+        for (String path : candidates) {
+            int skipLines = 0;
+            if (after != null) {
+                int cmp = path.compareTo(after[0]);
+                if (cmp < 0) continue;
+                if (cmp == 0) skipLines = Integer.parseInt(after[1]);
+            }
+            Path file = resolver.apply(path);
+            if (sniffBinary && isBinaryFile(file)) continue;
+            scanned++;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file),
+                    StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)))) {
+                String line;
+                int lineNo = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    if (lineNo <= skipLines) continue;
+                    if (System.nanoTime() > deadline) {
+                        // 超时：返回已有结果，游标指向当前行之前，下次从这里继续
+                        return new SearchResult(hits, scanned, encodeCursor(path, lineNo - 1));
+                    }
+                    if (!matcher.find(line, deadline)) continue;
+                    if (hits.size() >= limit) {
+                        SearchHit last = hits.get(hits.size() - 1);
+                        return new SearchResult(hits, scanned, encodeCursor(last.getPath(), last.getLine()));
+                    }
+                    hits.add(new SearchHit(path, lineNo, line.length() > MAX_HIT_CHARS ? line.substring(0, MAX_HIT_CHARS) : line));
+                }
+            } catch (NoSuchFileException e) {
+                // 检索过程中被删除的文件直接跳过
+            }
+        }
+        return new SearchResult(hits, scanned, null);
+    }
+
+    private interface LineMatcher {
+        boolean find(String line, long deadline);
+    }
+
+    private static LineMatcher compile(String query, boolean regex, boolean ignoreCase) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Search query cannot be empty.");
+        }
+        if (!regex && !ignoreCase) {
+            return (line, deadline) -> line.contains(query);
+        }
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        Pattern pattern;
+        try {
+            pattern = regex ? Pattern.compile(query, flags) : Pattern.compile(Pattern.quote(query), flags);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex: " + e.getDescription());
+        }
+        return (line, deadline) -> pattern.matcher(new DeadlineCharSequence(line, deadline)).find();
+    }
+
+    /**
+     * 回溯严重的正则在单行上也可能长时间运行，通过在 charAt 中检查截止时间将其中断。
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+        private final CharSequence inner;
+        private final long deadline;
+        private int ticks;
+
+        DeadlineCharSequence(CharSequence inner, long deadline) {
+            this.inner = inner;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++ticks & 0xFFFF) == 0 && System.nanoTime() > deadline) {
+                throw new RuntimeException("Search Timeout: Regex evaluation exceeded the time limit. Please simplify the pattern.");
+            }
+            return inner.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return inner.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(inner.subSequence(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return inner.toString();
+        }
+    }
+
+    /**
+     * 文件内容的 trigram 集合 (已排序去重)。ASCII 字母统一转小写，跨行的三字节组不计入。
+     */
+    static int[] trigrams(byte[] content) {
+        int n = content.length - 2;
+        if (n <= 0) return new int[0];
+        int[] all = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int t = trigramAt(content, i);
+            if (t >= 0) all[count++] = t;
+        }
+        Arrays.sort(all, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || all[i] != all[unique - 1]) all[unique++] = all[i];
+        }
+        return Arrays.copyOf(all, unique);
+    }
+
+    private static int trigramAt(byte[] b, int i) {
+        int b0 = b[i] & 0xff, b1 = b[i + 1] & 0xff, b2 = b[i + 2] & 0xff;
+        if (isLineBreak(b0) || isLineBreak(b1) || isLineBreak(b2)) return -1;
+        return (lower(b0) << 16) | (lower(b1) << 8) | lower(b2);
+    }
+
+    private static boolean isLineBreak(int b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static int lower(int b) {
+        return (b >= 'A' && b <= 'Z') ? b + 32 : b;
+    }
+
+    /**
+     * 匹配结果中必然出现的 trigram；返回空数组表示无法筛选，需扫描全部文件。
+     */
+    static int[] requiredTrigrams(String query, boolean regex, boolean ignoreCase) {
+        List<String> literals = regex ? regexLiterals(query) : Collections.singletonList(query);
+        TreeSet<Integer> required = new TreeSet<>();
+        for (String literal : literals) {
+            byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                // 非 ASCII 字符的大小写变体字节不同，忽略大小写时不能作为筛选条件
+                if (ignoreCase && (bytes[i] < 0 || bytes[i + 1] < 0 || bytes[i + 2] < 0)) continue;
+                int t = trigramAt(bytes, i);
+                if (t >= 0) required.add(t);
+            }
+        }
+        int[] result = new int[required.size()];
+        int i = 0;
+        for (Integer t : required) result[i++] = t;
+        return result;
+    }
+
+    /**
+     * 保守地提取正则中必然按原样出现的字面量片段：只取顶层 (不在分组、字符类中) 的连续普通字符，
+     * 后接 ? * {..} 的字符不计入；含选择符 | 或内联标志 (?..) 时不做筛选。
+     * 带操作数的转义 (如 \x41、\0101、\cA、\k&lt;name&gt;、\p{L}、\N{..} 以及 Unicode 转义) 与反向引用 \1 的长度不定，同样不做筛选。
+     */
+    static List<String> regexLiterals(String regex) {
+        List<String> runs = new ArrayList<>();
+        if (regex.indexOf('|') >= 0 || regex.contains("(?")) return runs;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int n = regex.length();
+        for (int i = 0; i < n; i++) {
+            char c = regex.charAt(i);
+            char literal;
+            if (c == '\\') {
+                if (i + 1 >= n) break;
+                char e = regex.charAt(++i);
+                if (e == 'Q' || "xu0ckpPN123456789".indexOf(e) >= 0) return new ArrayList<>();
+                if (Character.isLetterOrDigit(e)) {
+                    // \d \w \s \b \n 等单字符转义，不是字面量
+                    flush(run, runs);
+                    continue;
+                }
+                literal = e;
+            } else if ("()[]{}.^$*+?".indexOf(c) >= 0) {
+                switch (c) {
+                    case '(':
+                        depth++;
+                        break;
+                    case ')':
+                        depth = Math.max(0, depth - 1);
+                        break;
+                    case '[':
+                        i = skipCharClass(regex, i);
+                        break;
+                    case '*':
+                    case '?':
+                        dropLast(run);
+                        break;
+                    case '{':
+                        int close = regex.indexOf('}', i);
+                        if (close < 0) return new ArrayList<>();
+                        if (regex.substring(i + 1).startsWith("0")) dropLast(run);
+                        i = close;
+                        break;
+                    default:
+                        break;
+                }
+                flush(run, runs);
+                continue;
+            } else {
+                literal = c;
+            }
+            if (depth == 0) {
+                // 下一个字符若是可选量词，当前字符不一定出现，由上面的 dropLast 处理
+                run.append(literal);
+            }
+        }
+        flush(run, runs);
+        return runs;
+    }
+
+    private static int skipCharClass(String regex, int open) {
+        int i = open + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        int nested = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nested++;
+            } else if (c == ']') {
+                if (nested == 0) return i;
+                nested--;
+            }
+        }
+        return regex.length();
+    }
+
+    private static void dropLast(StringBuilder run) {
+        if (run.length() > 0) run.setLength(run.length() - 1);
+    }
+
+    private static void flush(StringBuilder run, List<String> runs) {
+        if (run.length() >= 3) runs.add(run.toString());
+        run.setLength(0);
+    }
+
+    private static boolean isBinary(byte[] content, int length) {
+        int n = Math.min(length, BINARY_SNIFF_BYTES);
+        for (int i = 0; i < n; i++) {
+            if (content[i] == 0) return true;
+        }
+        return false;
+    }
+
+    private static boolean isBinaryFile(Path file) throws IOException {
+        byte[] head = new byte[BINARY_SNIFF_BYTES];
+        try (InputStream in = Files.newInputStream(file)) {
+            return isBinary(head, readFully(in, head));
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static String normalize(String logicalPath) {
+        String normalized = logicalPath.replace('\\', '/');
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static String encodeCursor(String path, int line) {
+        String raw = line + ":" + path;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            Integer.parseInt(raw.substring(0, sep));
+            return new String[]{raw.substring(sep + 1), raw.substring(0, sep)};
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+
+    private static final class Doc {
+        static final int INDEXED = 0;
+        static final int UNINDEXED = 1; // 过大的文本文件，总作为候选
+        static final int BINARY = 2;    // 不参与检索
+
+        final String path;
+        final long size;
+        final long mtime;
+        final int kind;
+        int[] trigrams; // 仅在写入倒排表前使用，之后释放
+        int id = -1;
+
+        Doc(String path, long size, long mtime, int kind, int[] trigrams) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.kind = kind;
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * 升序 int 列表，倒排表的一项。
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    private static final class Index {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Object refreshLock = new Object();
+        final TreeMap<String, Doc> docs = new TreeMap<>();
+        final HashMap<Integer, Postings> postings = new HashMap<>();
+        // 文档编号 -> 文档，已删除或被替换的位置为 null
+        ArrayList<Doc> byId = new ArrayList<>();
+        int dead;
+        // 倒排表条目总数 (含失效编号)，用于全局内存上限
+        volatile long entries;
+        volatile boolean stale = true;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        void put(Doc doc) {
+            lock.writeLock().lock();
+            try {
+                Doc existing = docs.get(doc.path);
+                if (existing != null) {
+                    // 并发的旧快照不能覆盖更新的内容
+                    if (existing.mtime > doc.mtime) return;
+                    retire(existing);
+                }
+                docs.put(doc.path, doc);
+                if (doc.kind == Doc.INDEXED) {
+                    doc.id = byId.size();
+                    byId.add(doc);
+                    for (int t : doc.trigrams) {
+                        postings.computeIfAbsent(t, k -> new Postings()).add(doc.id);
+                    }
+                    entries += doc.trigrams.length;
+                    doc.trigrams = null;
+                }
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String path) {
+            lock.writeLock().lock();
+            try {
+                removeExact(path);
+                for (Doc doc : new ArrayList<>(docs.subMap(path + "/", true, path + "0", false).values())) {
+                    retire(doc);
+                    docs.remove(doc.path);
+                }
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void removeExact(String path) {
+            lock.writeLock().lock();
+            try {
+                Doc doc = docs.remove(path);
+                if (doc != null) retire(doc);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean contains(String path) {
+            lock.readLock().lock();
+            try {
+                return docs.containsKey(path);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void diff(Map<String, long[]> current, List<String> removed, List<String> changed) {
+            lock.readLock().lock();
+            try {
+                for (String path : docs.keySet()) {
+                    if (!current.containsKey(path)) removed.add(path);
+                }
+                for (Map.Entry<String, long[]> e : current.entrySet()) {
+                    Doc doc = docs.get(e.getKey());
+                    if (doc == null || doc.size != e.getValue()[0] || doc.mtime != e.getValue()[1]) changed.add(e.getKey());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * prefix 下可能命中的文件 (按路径排序)：包含全部 required trigram 的已索引文件，加上未建索引的大文件。
+         */
+        List<String> candidates(int[] required, String prefix) {
+            lock.readLock().lock();
+            try {
+                NavigableMap<String, Doc> scope = docs;
+                if (!prefix.isEmpty()) {
+                    scope = new TreeMap<>();
+                    Doc self = docs.get(prefix);
+                    if (self != null) scope.put(prefix, self);
+                    scope.putAll(docs.subMap(prefix + "/", true, prefix + "0", false));
+                }
+                BitSet matched = required.length > 0 ? intersect(required) : null;
+                List<String> result = new ArrayList<>();
+                for (Doc doc : scope.values()) {
+                    if (doc.kind == Doc.BINARY) continue;
+                    if (doc.kind == Doc.INDEXED && matched != null && !matched.get(doc.id)) continue;
+                    result.add(doc.path);
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private BitSet intersect(int[] required) {
+            List<Postings> lists = new ArrayList<>();
+            for (int t : required) {
+                Postings p = postings.get(t);
+                if (p == null) return new BitSet();
+                lists.add(p);
+            }
+            lists.sort(Comparator.comparingInt(p -> p.size));
+            BitSet result = new BitSet();
+            Postings smallest = lists.get(0);
+            for (int i = 0; i < smallest.size; i++) result.set(smallest.ids[i]);
+            for (int l = 1; l < lists.size() && !result.isEmpty(); l++) {
+                Postings p = lists.get(l);
+                BitSet next = new BitSet();
+                for (int i = 0; i < p.size; i++) {
+                    if (result.get(p.ids[i])) next.set(p.ids[i]);
+                }
+                result = next;
+            }
+            return result;
+        }
+
+        private void retire(Doc doc) {
+            if (doc.id >= 0) {
+                byId.set(doc.id, null);
+                dead++;
+            }
+        }
+
+        /**
+         * 倒排表中残留的失效编号过多时整体重新编号。
+         */
+        private void compactIfNeeded() {
+            if (dead < COMPACT_THRESHOLD || dead < byId.size() - dead) return;
+            int[] remap = new int[byId.size()];
+            ArrayList<Doc> compacted = new ArrayList<>(byId.size() - dead);
+            for (int i = 0; i < byId.size(); i++) {
+                Doc doc = byId.get(i);
+                remap[i] = -1;
+                if (doc == null) continue;
+                remap[i] = compacted.size();
+                doc.id = compacted.size();
+                compacted.add(doc);
+            }
+            long remaining = 0;
+            Iterator<Postings> it = postings.values().iterator();
+            while (it.hasNext()) {
+                Postings p = it.next();
+                int size = 0;
+                for (int i = 0; i < p.size; i++) {
+                    int mapped = remap[p.ids[i]];
+                    if (mapped >= 0) p.ids[size++] = mapped;
+                }
+                p.size = size;
+                remaining += size;
+                if (size == 0) it.remove();
+            }
+            entries = remaining;
+            byId = compacted;
+            dead = 0;
+        }
+    }
+}
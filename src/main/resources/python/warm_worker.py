@@ -0,0 +1,106 @@
+# 常驻 Python 工作进程 (由 PythonWorkerPool 启动)
+# 协议：stdin 每行一个 JSON 请求 {"script", "argv", "timeout"}；
+# stdout 输出帧 [kind:1][len:4][data]，kind 1 = stdout，2 = stderr，0 = 退出码 (int32)，3 = 超时。
+# 每个请求 fork 一个子进程执行，解释器启动与预加载模块的开销只付一次，且请求之间互不影响。
+import json
+import os
+import runpy
+import select
+import signal
+import struct
+import sys
+import time
+import traceback
+
+for _name in sys.argv[1:]:
+    try:
+        __import__(_name)
+    except Exception:
+        pass
+
+_proto = os.fdopen(os.dup(1), 'wb')
+_devnull = os.open(os.devnull, os.O_RDWR)
+os.dup2(_devnull, 1)
+
+
+def _send(kind, data):
+    _proto.write(struct.pack('>BI', kind, len(data)))
+    _proto.write(data)
+    _proto.flush()
+
+
+def _child(req, out_w, err_w):
+    _proto_fd = _proto.fileno()
+    os.close(_proto_fd)
+    os.dup2(_devnull, 0)
+    os.dup2(out_w, 1)
+    os.dup2(err_w, 2)
+    os.close(out_w)
+    os.close(err_w)
+    code = 0
+    try:
+        script = req['script']
+        sys.argv = [script] + list(req.get('argv', []))
+        sys.path[0] = os.path.dirname(os.path.abspath(script))
+        runpy.run_path(script, run_name='__main__')
+    except SystemExit as e:
+        if e.code is None:
+            code = 0
+        elif isinstance(e.code, int):
+            code = e.code
+        else:
+            sys.stderr.write(str(e.code) + '\n')
+            code = 1
+    except BaseException:
+        traceback.print_exc()
+        code = 1
+    try:
+        sys.stdout.flush()
+        sys.stderr.flush()
+    finally:
+        os._exit(code & 0xFF)
+
+
+def _run(req):
+    out_r, out_w = os.pipe()
+    err_r, err_w = os.pipe()
+    pid = os.fork()
+    if pid == 0:
+        os.close(out_r)
+        os.close(err_r)
+        _child(req, out_w, err_w)
+    os.close(out_w)
+    os.close(err_w)
+    deadline = time.time() + float(req.get('timeout', 300))
+    kinds = {out_r: 1, err_r: 2}
+    open_fds = [out_r, err_r]
+    timed_out = False
+    while open_fds:
+        remaining = deadline - time.time()
+        if remaining <= 0:
+            timed_out = True
+            os.kill(pid, signal.SIGKILL)
+            break
+        ready, _, _ = select.select(open_fds, [], [], remaining)
+        for fd in ready:
+            data = os.read(fd, 65536)
+            if data:
+                _send(kinds[fd], data)
+            else:
+                open_fds.remove(fd)
+                os.close(fd)
+    for fd in open_fds:
+        os.close(fd)
+    _, status = os.waitpid(pid, 0)
+    if timed_out:
+        _send(3, b'')
+    elif os.WIFEXITED(status):
+        _send(0, struct.pack('>i', os.WEXITSTATUS(status)))
+    else:
+        _send(0, struct.pack('>i', 128 + os.WTERMSIG(status)))
+
+
+for _line in sys.stdin:
+    if not _line.strip():
+        continue
+    _run(json.loads(_line))
@@ -0,0 +1,97 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.EditRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteEditorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appliesAllEditsInOnePass() throws IOException {
+        Path file = write("a.txt", "alpha beta alpha gamma");
+        ByteEditor.apply(file, Arrays.asList(edit("alpha", "A", 2), edit("gamma", "G", 1)));
+        assertEquals("A beta A G", read(file));
+        assertNoTempFiles();
+    }
+
+    @Test
+    void overlappingEditsConflictAndLeaveFileUnchanged() throws IOException {
+        Path file = write("a.txt", "abcdef");
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ByteEditor.apply(file, Arrays.asList(edit("abcd", "x", 1), edit("cdef", "y", 1))));
+        assertTrue(e.getMessage().startsWith("Edit Conflict"));
+        assertEquals("abcdef", read(file));
+        assertNoTempFiles();
+    }
+
+    @Test
+    void countMismatchLeavesFileUnchanged() throws IOException {
+        Path file = write("a.txt", "one two one");
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ByteEditor.apply(file, Collections.singletonList(edit("one", "1", 1))));
+        assertTrue(e.getMessage().startsWith("Edit Mismatch"));
+        assertEquals("one two one", read(file));
+        assertNoTempFiles();
+    }
+
+    @Test
+    void matchesAcrossCrlfAndPreservesOtherLineEndings() throws IOException {
+        Path file = write("a.txt", "first\r\nsecond\r\nthird\r\n");
+        ByteEditor.apply(file, Collections.singletonList(edit("first\r\nsecond", "merged", 1)));
+        assertEquals("merged\r\nthird\r\n", read(file));
+    }
+
+    @Test
+    void emptyOldStringIsRejected() throws IOException {
+        Path file = write("a.txt", "text");
+        assertThrows(RuntimeException.class, () -> ByteEditor.apply(file, Collections.singletonList(edit("", "x", 1))));
+        assertEquals("text", read(file));
+    }
+
+    @Test
+    void editsLargeMappedFile() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) sb.append("line ").append(i).append('\n');
+        sb.append("needle\n");
+        Path file = write("big.txt", sb.toString());
+        ByteEditor.apply(file, Collections.singletonList(edit("needle", "found", 1)));
+        String content = read(file);
+        assertTrue(content.endsWith("line 39999\nfound\n"));
+        assertEquals(sb.length() - 1, content.length());
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private void assertNoTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.filter(p -> p.getFileName().toString().endsWith(".edit")).count());
+        }
+    }
+
+    private static EditRequest edit(String oldString, String newString, int expected) {
+        EditRequest edit = new EditRequest();
+        edit.setOldString(oldString);
+        edit.setNewString(newString);
+        edit.setExpectedReplacements(expected);
+        return edit;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.UploadSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private SandboxService sandboxService;
+    private ChunkedUploadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sandboxService = Mockito.mock(SandboxService.class);
+        Mockito.when(sandboxService.uploadStagingDir("u", "a")).thenReturn(stagingDir);
+        Mockito.when(sandboxService.publishUpload(eq("u"), eq("a"), anyString(), any(Path.class))).thenReturn("published");
+        service = new ChunkedUploadService();
+        ReflectionTestUtils.setField(service, "sandboxService", sandboxService);
+        ReflectionTestUtils.setField(service, "maxSize", 1024L);
+        ReflectionTestUtils.setField(service, "expireHours", 24L);
+    }
+
+    @Test
+    void receivedRangesMergeWhenAdjacentOrOverlapping() throws IOException {
+        ChunkedUploadService.Session session = new ChunkedUploadService.Session("id", stagingDir, "files/a.bin", 100);
+        session.received(0, 10);
+        session.received(20, 30);
+        assertEquals(Arrays.asList("10-19", "30-99"), session.missingRanges());
+        session.received(10, 20);
+        session.received(5, 25);
+        assertEquals(30, session.receivedBytes());
+        assertEquals(Collections.singletonList("30-99"), session.missingRanges());
+        session.received(30, 100);
+        assertTrue(session.describe().isComplete());
+    }
+
+    @Test
+    void invalidateSplitsAndTrimsRanges() throws IOException {
+        ChunkedUploadService.Session session = new ChunkedUploadService.Session("id", stagingDir, "files/a.bin", 100);
+        session.received(0, 50);
+        session.received(60, 80);
+        session.invalidate(10, 20);
+        assertEquals(Arrays.asList("10-19", "50-59", "80-99"), session.missingRanges());
+        session.invalidate(0, 5);
+        session.invalidate(45, 70);
+        assertEquals(Arrays.asList("0-4", "10-19", "45-69", "80-99"), session.missingRanges());
+        assertEquals(5 + 25 + 10, session.receivedBytes());
+    }
+
+    @Test
+    void sessionStateSurvivesReload() throws IOException {
+        ChunkedUploadService.Session session = new ChunkedUploadService.Session("id", stagingDir, "files/a.bin", 100);
+        session.received(0, 40);
+        session.received(70, 100);
+        ChunkedUploadService.Session loaded = ChunkedUploadService.Session.load("id", stagingDir);
+        assertNotNull(loaded);
+        assertEquals(Collections.singletonList("40-69"), loaded.missingRanges());
+        assertEquals("files/a.bin", loaded.describe().getPath());
+    }
+
+    @Test
+    void outOfBoundsPartIsRejectedBeforeWriting() throws IOException {
+        UploadSession upload = service.initiate("u", "a", "files/a.bin", 8);
+        IOException e = assertThrows(IOException.class, () -> service.writePart("u", "a", upload.getUploadId(), 4, 8, body("12345678")));
+        assertTrue(e.getMessage().contains("exceeds the declared size"));
+        assertEquals(0, service.status("u", "a", upload.getUploadId()).getReceivedBytes());
+    }
+
+    @Test
+    void partWithoutDeclaredLengthOverflowingIsInvalidated() throws IOException {
+        UploadSession upload = service.initiate("u", "a", "files/a.bin", 8);
+        assertThrows(IOException.class, () -> service.writePart("u", "a", upload.getUploadId(), 4, -1, body("12345678")));
+        assertEquals(0, service.status("u", "a", upload.getUploadId()).getReceivedBytes());
+    }
+
+    @Test
+    void commitPublishesCompleteUploadAndClosesSession() throws IOException {
+        UploadSession upload = service.initiate("u", "a", "files/./a.bin", 8);
+        String id = upload.getUploadId();
+        service.writePart("u", "a", id, 4, 4, body("5678"));
+        IOException incomplete = assertThrows(IOException.class, () -> service.commit("u", "a", id));
+        assertTrue(incomplete.getMessage().contains("0-3"));
+
+        service.writePart("u", "a", id, 0, 4, body("1234"));
+        assertEquals("12345678", new String(Files.readAllBytes(stagingDir.resolve(id + ".data")), StandardCharsets.UTF_8));
+        assertEquals("published", service.commit("u", "a", id));
+        Mockito.verify(sandboxService).publishUpload(eq("u"), eq("a"), eq("files/a.bin"), eq(stagingDir.resolve(id + ".data")));
+
+        assertThrows(IOException.class, () -> service.writePart("u", "a", id, 0, 4, body("1234")));
+        assertThrows(IOException.class, () -> service.commit("u", "a", id));
+    }
+
+    @Test
+    void commitIsRejectedWhilePartIsInFlight() throws IOException {
+        UploadSession upload = service.initiate("u", "a", "files/a.bin", 4);
+        String id = upload.getUploadId();
+        service.writePart("u", "a", id, 0, 4, body("1234"));
+        ChunkedUploadService.Session session = ReflectionTestUtils.invokeMethod(service, "session", "u", "a", id);
+        session.beginWrite();
+        try {
+            IOException e = assertThrows(IOException.class, () -> service.commit("u", "a", id));
+            assertTrue(e.getMessage().contains("still being written"));
+        } finally {
+            session.endWrite();
+        }
+        assertEquals("published", service.commit("u", "a", id));
+    }
+
+    @Test
+    void purgeUsesConfiguredExpiryForSessionsNotInMemory() throws IOException {
+        Mockito.when(sandboxService.listUploadStagingDirs()).thenReturn(Collections.singletonList(stagingDir));
+        ReflectionTestUtils.setField(service, "expireHours", 48L);
+        long now = System.currentTimeMillis();
+        Path stale = touch("aaaa.data", now - 49 * 3600_000L);
+        Path staleMeta = touch("aaaa.meta", now - 49 * 3600_000L);
+        Path recent = touch("bbbb.data", now - 30 * 3600_000L);
+        String live = service.initiate("u", "a", "files/a.bin", 4).getUploadId();
+        Files.setLastModifiedTime(stagingDir.resolve(live + ".data"), FileTime.fromMillis(now - 49 * 3600_000L));
+
+        service.purgeAbandonedSessions();
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(staleMeta));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(stagingDir.resolve(live + ".data")));
+    }
+
+    private Path touch(String name, long mtime) throws IOException {
+        Path file = Files.write(stagingDir.resolve(name), new byte[1]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(mtime));
+        return file;
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.filesecbox.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandValidatorTest {
+
+    // 产品根目录在用例表中以 {root} 占位，运行时替换为临时目录
+    private static final String ROOT = "{root}";
+
+    @TempDir
+    Path productRoot;
+
+    private CommandValidator validator;
+    private Path workspace;
+    private Path otherWorkspace;
+
+    @BeforeEach
+    void setUp() {
+        ProductRootResolver resolver = new ProductRootResolver();
+        ReflectionTestUtils.setField(resolver, "productRootWin", productRoot.toString());
+        ReflectionTestUtils.setField(resolver, "productRootLinux", productRoot.toString());
+        resolver.init();
+        validator = new CommandValidator();
+        ReflectionTestUtils.setField(validator, "productRootResolver", resolver);
+        ReflectionTestUtils.setField(validator, "cacheSize", 16);
+        validator.init();
+        workspace = productRoot.resolve("a1").resolve("workspaces").resolve("u1");
+        otherWorkspace = productRoot.resolve("a1").resolve("workspaces").resolve("u2");
+    }
+
+    static Stream<Arguments> tokenizeCases() {
+        return Stream.of(
+                Arguments.of("python3 \"skills/my skill/run.py\" files/in.txt", Arrays.asList("python3", "skills/my skill/run.py", "files/in.txt")),
+                Arguments.of("cat files/a.txt|grep x>files/out.txt", Arrays.asList("cat", "files/a.txt", "grep", "x", "files/out.txt")),
+                Arguments.of("echo hi&&cat files/b.txt>>files/c.txt", Arrays.asList("echo", "hi", "cat", "files/b.txt", "files/c.txt")),
+                Arguments.of("sort<files/in.txt\t files/x", Arrays.asList("sort", "files/in.txt", "files/x")),
+                Arguments.of("cat \"files/unterminated", Arrays.asList("cat", "\"files/unterminated"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("tokenizeCases")
+    void tokenizeSplitsOnWhitespaceAndShellOperators(String command, List<String> expected) {
+        assertEquals(expected, CommandValidator.tokenize(command));
+    }
+
+    static Stream<Arguments> acceptedCases() {
+        return Stream.of(
+                Arguments.of("python3 \"skills/my skill/run.py\" files/in.txt", Arrays.asList("skills/my skill/run.py", "files/in.txt")),
+                Arguments.of("cat files/a.txt|grep x>files/out.txt", Arrays.asList("files/a.txt", "files/out.txt")),
+                Arguments.of("echo hi&cat files/b.txt", Collections.singletonList("files/b.txt")),
+                Arguments.of("\"ls\" -la skills", Collections.singletonList("skills")),
+                Arguments.of("echo name > skills/demo/SKILL.md", Collections.singletonList("skills/demo/SKILL.md")),
+                Arguments.of("python3 -V 3.10", Collections.emptyList()),
+                Arguments.of("cat " + ROOT + "/skill-creator/scripts/init.py", Collections.singletonList(ROOT + "/skill-creator/scripts/init.py"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("acceptedCases")
+    void acceptsCommandsWithinScope(String command, List<String> expectedPaths) {
+        CommandValidator.ValidatedCommand validated = validator.validate(expand(command), workspace);
+        assertEquals(expand(expectedPaths), validated.getPathTokens());
+    }
+
+    static Stream<Arguments> rejectedCases() {
+        return Stream.of(
+                Arguments.of("cat files/../secret.txt", "Path traversal"),
+                Arguments.of("wget files/a.txt", "is not allowed"),
+                Arguments.of("cat files/a.txt|cat /etc/passwd", "out of operable scope"),
+                Arguments.of("echo x>>files/a.txt&cat \"/etc/my file.txt\"", "out of operable scope"),
+                Arguments.of("echo x > skills/demo/sub/SKILL.md", "'SKILL.md' is a system reserved file"),
+                Arguments.of("cat SKILL.md", "'SKILL.md' is a system reserved file"),
+                Arguments.of("echo x > files/SKILL.md", "'SKILL.md' is a system reserved file"),
+                Arguments.of("rm " + ROOT + "/skill-creator/scripts/init.py", "Modification of 'skill-creator'"),
+                Arguments.of("echo x>" + ROOT + "/skill-creator/notes.txt", "Redirecting output to 'skill-creator'"),
+                Arguments.of("grep -r --include=" + ROOT + "/a1/workspaces/u2/files/x files/a.txt", "outside workspace scope")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("rejectedCases")
+    void rejectsCommandsOutOfPolicy(String command, String expectedMessage) {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> validator.validate(expand(command), workspace));
+        assertTrue(e.getMessage().startsWith("Security Error"), e.getMessage());
+        assertTrue(e.getMessage().contains(expectedMessage), e.getMessage());
+    }
+
+    @Test
+    void physicalScopeIsCheckedPerWorkspaceForCachedCommands() {
+        String readCreator = expand("cat " + ROOT + "/skill-creator/scripts/init.py");
+        assertNotNull(validator.validate(readCreator, workspace));
+        assertNotNull(validator.validate(readCreator, otherWorkspace));
+
+        String crossWorkspace = expand("grep -r --include=" + ROOT + "/a1/workspaces/u2/files/x files/a.txt");
+        RuntimeException first = assertThrows(RuntimeException.class, () -> validator.validate(crossWorkspace, workspace));
+        RuntimeException cached = assertThrows(RuntimeException.class, () -> validator.validate(crossWorkspace, workspace));
+        assertEquals(first.getMessage(), cached.getMessage());
+    }
+
+    private String expand(String command) {
+        return command.replace(ROOT, productRoot.toAbsolutePath().normalize().toString().replace('\\', '/'));
+    }
+
+    private List<String> expand(List<String> paths) {
+        String[] expanded = new String[paths.size()];
+        for (int i = 0; i < expanded.length; i++) expanded[i] = expand(paths.get(i));
+        return Arrays.asList(expanded);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.CommandRequest;
+import com.example.filesecbox.model.ExecutionJob;
+import com.example.filesecbox.model.ExecutionResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExecutionJobServiceTest {
+
+    private final ExecutionScheduler scheduler = new ExecutionScheduler(new SimpleMeterRegistry());
+    private final SandboxService sandboxService = mock(SandboxService.class);
+    private final ExecutionJobService service = new ExecutionJobService();
+    private final CountDownLatch releaseA = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(scheduler, "perAgentMax", 4);
+        ReflectionTestUtils.setField(scheduler, "perUserMax", 1);
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 16);
+        ReflectionTestUtils.setField(scheduler, "queueTimeoutSeconds", 30);
+
+        ReflectionTestUtils.setField(service, "sandboxService", sandboxService);
+        ReflectionTestUtils.setField(service, "executionScheduler", scheduler);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "queueCapacity", 8);
+        ReflectionTestUtils.setField(service, "streamThreads", 1);
+        ReflectionTestUtils.setField(service, "retentionMinutes", 30L);
+        ReflectionTestUtils.setField(service, "replayChars", 65536);
+        ReflectionTestUtils.setField(service, "perUserPending", 6);
+        ReflectionTestUtils.setField(service, "retryMillis", 20L);
+        service.init();
+
+        when(sandboxService.execute(eq("a"), eq("agent"), any(CommandRequest.class), any(), any(ExecutionScheduler.Ticket.class)))
+                .thenAnswer(inv -> {
+                    releaseA.await(10, TimeUnit.SECONDS);
+                    return new ExecutionResult("a", "", 0);
+                });
+        when(sandboxService.execute(eq("b"), eq("agent"), any(CommandRequest.class), any(), any(ExecutionScheduler.Ticket.class)))
+                .thenReturn(new ExecutionResult("b", "", 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseA.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void backlogOfOneUserDoesNotBlockAnother() throws Exception {
+        List<String> backlog = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            backlog.add(service.submit("a", "agent", command("sleep")).getJobId());
+        }
+        String other = service.submit("b", "agent", command("echo")).getJobId();
+
+        assertEquals("SUCCEEDED", awaitFinished("b", other).getStatus());
+        int running = 0;
+        for (String id : backlog) {
+            String status = service.getJob("a", "agent", id).getStatus();
+            assertTrue("RUNNING".equals(status) || "QUEUED".equals(status), status);
+            if ("RUNNING".equals(status)) running++;
+        }
+        assertEquals(1, running);
+
+        releaseA.countDown();
+        for (String id : backlog) {
+            assertEquals("SUCCEEDED", awaitFinished("a", id).getStatus());
+        }
+    }
+
+    @Test
+    void rejectsSubmitBeyondPerUserPendingLimit() {
+        for (int i = 0; i < 6; i++) {
+            service.submit("a", "agent", command("sleep"));
+        }
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.submit("a", "agent", command("sleep")));
+        assertTrue(e.getMessage().startsWith("Server busy"));
+        assertNotNull(service.submit("b", "agent", command("echo")).getJobId());
+    }
+
+    private ExecutionJob awaitFinished(String userId, String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        ExecutionJob job = service.getJob(userId, "agent", jobId);
+        while (job.getFinishedAt() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = service.getJob(userId, "agent", jobId);
+        }
+        assertNotNull(job.getFinishedAt(), "job did not finish: " + jobId);
+        return job;
+    }
+
+    private static CommandRequest command(String text) {
+        CommandRequest request = new CommandRequest();
+        request.setCommand(text);
+        return request;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.ExecutionResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionResultCacheTest {
+
+    @TempDir
+    Path workspace;
+
+    private final ExecutionResultCache cache = new ExecutionResultCache(new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1024L);
+        write("skills/demo/run.py", "print('hi')\n");
+        write("files/in.txt", "input\n");
+    }
+
+    @Test
+    void keyChangesWithReferencedContent() throws IOException {
+        String command = "python3 skills/demo/run.py files/in.txt";
+        String first = cache.key(workspace, command, Arrays.asList("skills/demo/run.py", "files/in.txt"));
+        assertNotNull(first);
+        assertEquals(first, cache.key(workspace, command, Arrays.asList("skills/demo/run.py", "files/in.txt")));
+
+        Path input = write("files/in.txt", "changed\n");
+        Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertNotEquals(first, cache.key(workspace, command, Arrays.asList("skills/demo/run.py", "files/in.txt")));
+    }
+
+    @Test
+    void commandsWithoutSkillsAreNotCached() throws IOException {
+        assertNull(cache.key(workspace, "cat files/in.txt", Collections.singletonList("files/in.txt")));
+    }
+
+    @Test
+    void globbedTokensAreNotCached() throws IOException {
+        for (String token : new String[]{"files/*.txt", "files/in?.txt", "files/[a-z].txt"}) {
+            assertNull(cache.key(workspace, "python3 skills/demo/run.py " + token,
+                    Arrays.asList("skills/demo/run.py", token)), token);
+        }
+    }
+
+    @Test
+    void missingUnitsAreNotCached() throws IOException {
+        assertNull(cache.key(workspace, "python3 skills/demo/run.py files/out.csv",
+                Arrays.asList("skills/demo/run.py", "files/out.csv")));
+        assertNull(cache.key(workspace, "python3 skills/other/run.py", Collections.singletonList("skills/other/run.py")));
+    }
+
+    @Test
+    void bareSkillsTokenKeysOnTheWholeSkillsDirectory() throws IOException {
+        String before = cache.key(workspace, "ls skills", Collections.singletonList("skills"));
+        assertNotNull(before);
+        write("skills/added/SKILL.md", "---\nname: added\n---\n");
+        assertNotEquals(before, cache.key(workspace, "ls skills", Collections.singletonList("skills")));
+    }
+
+    @Test
+    void onlySuccessfulResultsAreStoredAndEvictedByLru() {
+        cache.put("failed", new ExecutionResult("", "boom", 1));
+        assertNull(cache.get("failed"));
+
+        cache.put("a", new ExecutionResult("A", "", 0));
+        cache.put("b", new ExecutionResult("B", "", 0));
+        assertNotNull(cache.get("a"));
+        cache.put("c", new ExecutionResult("C", "", 0));
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a").getStdout());
+        assertEquals("C", cache.get("c").getStdout());
+    }
+
+    private Path write(String relative, String content) throws IOException {
+        Path file = workspace.resolve(relative);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
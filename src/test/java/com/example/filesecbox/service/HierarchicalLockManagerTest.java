@@ -0,0 +1,103 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.service.HierarchicalLockManager.Held;
+import com.example.filesecbox.service.HierarchicalLockManager.Mode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalLockManagerTest {
+
+    private final HierarchicalLockManager manager = new HierarchicalLockManager();
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void compatibilityMatrix() throws Exception {
+        // 行：已持有的模式；列：请求的模式 (IS, IX, S, X)
+        boolean[][] compatible = {
+                {true, true, true, false},
+                {true, true, false, false},
+                {true, false, true, false},
+                {false, false, false, false},
+        };
+        for (Mode held : Mode.values()) {
+            for (Mode requested : Mode.values()) {
+                Held holder = acquire("node", held, 1000);
+                assertNotNull(holder);
+                // 锁按线程持有，须在获取它的线程上释放
+                Held other = pool.submit(() -> closeOn(acquire("node", requested, 50))).get();
+                assertEquals(compatible[held.ordinal()][requested.ordinal()], other != null, held + " vs " + requested);
+                holder.close();
+            }
+        }
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    void waitingWriterBlocksNewReaders() throws Exception {
+        Held reader = acquire("node", Mode.S, 1000);
+        CountDownLatch writerGranted = new CountDownLatch(1);
+        Future<?> writer = pool.submit(() -> {
+            Held held = acquire("node", Mode.X, 5000);
+            assertNotNull(held);
+            writerGranted.countDown();
+            held.close();
+            return null;
+        });
+        waitUntil(() -> pool.submit(() -> closeOn(acquire("node", Mode.S, 20))).get() == null);
+
+        assertEquals(1, writerGranted.getCount());
+        reader.close();
+        assertTrue(writerGranted.await(5, TimeUnit.SECONDS));
+        writer.get();
+        assertNotNull(pool.submit(() -> closeOn(acquire("node", Mode.S, 1000))).get());
+    }
+
+    @Test
+    void exclusiveHolderReentersAnyMode() throws Exception {
+        Held exclusive = acquire("node", Mode.X, 1000);
+        Held shared = acquire("node", Mode.S, 50);
+        assertNotNull(shared);
+        shared.close();
+        exclusive.close();
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    void timeoutReleasesAncestorsAlreadyAcquired() throws Exception {
+        Held child = acquire("agent/ws", Mode.X, 1000);
+        Held blocked = pool.submit(() -> manager.acquire(new String[]{"agent", "agent/ws"},
+                new Mode[]{Mode.IX, Mode.IX}, 50, TimeUnit.MILLISECONDS)).get();
+        assertNull(blocked);
+        // 祖先上的 IX 已释放，独占整个 agent 不受影响
+        Held agent = pool.submit(() -> closeOn(acquire("agent", Mode.X, 50))).get();
+        assertNotNull(agent);
+        child.close();
+        assertEquals(0, manager.size());
+    }
+
+    private Held acquire(String key, Mode mode, long timeoutMs) throws InterruptedException {
+        return manager.acquire(new String[]{key}, new Mode[]{mode}, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static Held closeOn(Held held) {
+        if (held != null) held.close();
+        return held;
+    }
+
+    private static void waitUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.call()) {
+            if (System.nanoTime() > deadline) fail("Condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
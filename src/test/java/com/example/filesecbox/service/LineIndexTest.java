@@ -0,0 +1,107 @@
+package com.example.filesecbox.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void checkpointsLandOnLineStartsForMixedLineEndings() throws IOException {
+        String[] endings = {"\n", "\r\n", "\r"};
+        StringBuilder sb = new StringBuilder();
+        int lines = LineIndex.STRIDE * 3 + 17;
+        for (int i = 0; i < lines; i++) {
+            sb.append("line-").append(i).append(endings[i % endings.length]);
+        }
+        Path file = Files.write(dir.resolve("mixed.txt"), sb.toString().getBytes(StandardCharsets.UTF_8));
+        List<String> expected = readLines(sb.toString());
+
+        LineIndex index = LineIndex.build(file, attrs(file));
+        for (long line : new long[]{0, 1, LineIndex.STRIDE - 1, LineIndex.STRIDE, LineIndex.STRIDE + 1,
+                LineIndex.STRIDE * 2, LineIndex.STRIDE * 3 + 5, lines - 1}) {
+            assertEquals(expected.get((int) line), readLineAt(file, index, line), "line " + line);
+        }
+    }
+
+    @Test
+    void crlfSplitAtCheckpointPointsPastTheLineFeed() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LineIndex.STRIDE + 2; i++) {
+            sb.append(i).append("\r\n");
+        }
+        Path file = Files.write(dir.resolve("crlf.txt"), sb.toString().getBytes(StandardCharsets.UTF_8));
+        LineIndex index = LineIndex.build(file, attrs(file));
+        long[] checkpoint = index.seek(LineIndex.STRIDE);
+        assertEquals(LineIndex.STRIDE, checkpoint[0]);
+        byte[] content = Files.readAllBytes(file);
+        assertEquals('1', content[(int) checkpoint[1]]);
+        assertEquals('\n', content[(int) checkpoint[1] - 1]);
+    }
+
+    @Test
+    void seekBeyondLastCheckpointUsesLastOne() throws IOException {
+        Path file = Files.write(dir.resolve("short.txt"), "a\nb\nc\n".getBytes(StandardCharsets.UTF_8));
+        LineIndex index = LineIndex.build(file, attrs(file));
+        assertArrayEquals(new long[]{0, 0}, index.seek(LineIndex.STRIDE * 5L));
+    }
+
+    @Test
+    void storedIndexRoundTripsAndDetectsChanges() throws IOException {
+        Path file = Files.write(dir.resolve("a.txt"), "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        LineIndex built = LineIndex.build(file, attrs(file));
+        Path indexFile = dir.resolve("idx").resolve("a.lidx");
+        built.store(indexFile);
+
+        LineIndex loaded = LineIndex.load(indexFile);
+        assertNotNull(loaded);
+        assertTrue(loaded.matches(attrs(file)));
+
+        Files.write(file, "one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertFalse(loaded.matches(attrs(file)));
+    }
+
+    @Test
+    void corruptIndexFileLoadsAsNull() throws IOException {
+        Path indexFile = Files.write(dir.resolve("bad.lidx"), new byte[]{1, 2, 3});
+        assertNull(LineIndex.load(indexFile));
+        assertNull(LineIndex.load(dir.resolve("missing.lidx")));
+    }
+
+    private static String readLineAt(Path file, LineIndex index, long line) throws IOException {
+        long[] checkpoint = index.seek(line);
+        byte[] content = Files.readAllBytes(file);
+        String tail = new String(content, (int) checkpoint[1], content.length - (int) checkpoint[1], StandardCharsets.UTF_8);
+        List<String> lines = readLines(tail);
+        return lines.get((int) (line - checkpoint[0]));
+    }
+
+    private static List<String> readLines(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        }
+        return lines;
+    }
+
+    private static BasicFileAttributes attrs(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.filesecbox.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputCaptureTest {
+
+    private static final String MARKER = "... [%d bytes omitted] ...";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shortOutputIsKeptWholeWithoutSpillFile() throws IOException {
+        Path spill = dir.resolve("logs").resolve("out.log");
+        OutputCapture capture = new OutputCapture("stdout", 16, spill, StandardCharsets.UTF_8, null);
+        feed(capture, "hello world\n", 5);
+        capture.finish();
+        assertFalse(capture.isTruncated());
+        assertEquals("hello world", capture.text(MARKER));
+        assertFalse(Files.exists(spill));
+    }
+
+    @Test
+    void outputThatJustFillsHeadAndTailIsNotTruncated() throws IOException {
+        Path spill = dir.resolve("out.log");
+        OutputCapture capture = new OutputCapture("stdout", 10, spill, StandardCharsets.UTF_8, null);
+        feed(capture, "0123456789", 3);
+        capture.finish();
+        assertFalse(capture.isTruncated());
+        assertEquals("0123456789", capture.text(MARKER));
+        assertFalse(Files.exists(spill));
+    }
+
+    @Test
+    void longOutputKeepsHeadAndTailAndSpillsEverything() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append((char) ('a' + i % 26));
+        String output = sb.toString();
+        Path spill = dir.resolve("out.log");
+        OutputCapture capture = new OutputCapture("stdout", 20, spill, StandardCharsets.UTF_8, null);
+        // 奇数块大小让尾部环形缓冲多次回绕
+        feed(capture, output, 7);
+        capture.finish();
+
+        assertTrue(capture.isTruncated());
+        String expected = output.substring(0, 10) + "\n" + String.format(MARKER, 980) + "\n" + output.substring(990);
+        assertEquals(expected, capture.text(MARKER));
+        assertEquals(output, new String(Files.readAllBytes(spill), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void chunkLargerThanTailReplacesIt() throws IOException {
+        Path spill = dir.resolve("out.log");
+        OutputCapture capture = new OutputCapture("stdout", 8, spill, StandardCharsets.UTF_8, null);
+        feed(capture, "ab", 2);
+        feed(capture, "cdefghijklmnop", 14);
+        capture.finish();
+        assertEquals("abcd\n" + String.format(MARKER, 8) + "\nmnop", capture.text(MARKER));
+        assertEquals("abcdefghijklmnop", new String(Files.readAllBytes(spill), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void listenerReceivesMultiByteCharactersSplitAcrossChunks() throws IOException {
+        StringBuilder received = new StringBuilder();
+        OutputCapture capture = new OutputCapture("stdout", 1024, dir.resolve("out.log"), StandardCharsets.UTF_8,
+                (stream, text) -> received.append(text));
+        String output = "执行输出：成功";
+        feed(capture, output, 1);
+        capture.finish();
+        assertEquals(output, received.toString());
+        assertEquals(output, capture.text(MARKER));
+    }
+
+    private static void feed(OutputCapture capture, String text, int chunk) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int off = 0; off < bytes.length; off += chunk) {
+            byte[] part = new byte[Math.min(chunk, bytes.length - off)];
+            System.arraycopy(bytes, off, part, 0, part.length);
+            capture.accept(part, 0, part.length);
+        }
+    }
+}
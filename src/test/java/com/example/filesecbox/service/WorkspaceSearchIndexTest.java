@@ -0,0 +1,100 @@
+package com.example.filesecbox.service;
+
+import com.example.filesecbox.model.SearchHit;
+import com.example.filesecbox.model.SearchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceSearchIndexTest {
+
+    @TempDir
+    Path workspace;
+
+    private final WorkspaceSearchIndex index = new WorkspaceSearchIndex();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(index, "maxFileBytes", 1048576L);
+        ReflectionTestUtils.setField(index, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(index, "maxPostings", 20000000L);
+    }
+
+    @Test
+    void extractsTopLevelLiteralRuns() {
+        assertEquals(Arrays.asList("hello", "world"), WorkspaceSearchIndex.regexLiterals("hello\\s+world"));
+        assertEquals(Collections.singletonList("abc"), WorkspaceSearchIndex.regexLiterals("abc(def)?"));
+        assertEquals(Collections.singletonList("a.b"), WorkspaceSearchIndex.regexLiterals("a\\.b"));
+    }
+
+    @Test
+    void optionalQuantifiersDropTheirCharacter() {
+        assertEquals(Collections.singletonList("colo"), WorkspaceSearchIndex.regexLiterals("colou?r"));
+        assertEquals(Collections.singletonList("abc"), WorkspaceSearchIndex.regexLiterals("abcd*e"));
+        assertEquals(Collections.singletonList("abc"), WorkspaceSearchIndex.regexLiterals("abcd{0,2}"));
+    }
+
+    @Test
+    void alternationInlineFlagsAndQuotingDisableFiltering() {
+        assertTrue(WorkspaceSearchIndex.regexLiterals("foo|bar").isEmpty());
+        assertTrue(WorkspaceSearchIndex.regexLiterals("(?i)foobar").isEmpty());
+        assertTrue(WorkspaceSearchIndex.regexLiterals("\\Qfoo.bar\\E").isEmpty());
+    }
+
+    @Test
+    void escapesWithOperandsDisableFiltering() {
+        for (String regex : new String[]{"abc\\x41def", "abc\\0101def", "abc\\u0041def", "(?<n>abc)\\k<n>def",
+                "abc\\p{L}def", "abc\\cAdef", "(abc)\\1def"}) {
+            assertTrue(WorkspaceSearchIndex.regexLiterals(regex).isEmpty(), regex);
+        }
+    }
+
+    @Test
+    void escapedOperandsAreStillFoundByFullScan() throws IOException {
+        write("files/a.txt", "prefix ABC suffix\n");
+        List<String> paths = paths(index.search(workspace, "files", "prefix \\x41BC suffix", true, false, null, 10));
+        assertEquals(Collections.singletonList("files/a.txt"), paths);
+    }
+
+    @Test
+    void trigramFilterNarrowsCandidates() throws IOException {
+        write("files/a.txt", "the quick brown fox\n");
+        write("files/b.txt", "lazy dog\n");
+        SearchResult result = index.search(workspace, "files", "quick", false, false, null, 10);
+        assertEquals(Collections.singletonList("files/a.txt"), paths(result));
+        assertEquals(1, result.getFilesScanned());
+    }
+
+    @Test
+    void searchDirectoryAcceptsASingleFile() throws IOException {
+        Path file = write("creator/SKILL.md", "name: creator\nhello\n");
+        SearchResult result = index.searchDirectory(file, "skills/skill-creator/SKILL.md", "hello", false, false, null, 10);
+        assertEquals(1, result.getHits().size());
+        assertEquals("skills/skill-creator/SKILL.md", result.getHits().get(0).getPath());
+        assertEquals(2, result.getHits().get(0).getLine());
+    }
+
+    private Path write(String relative, String content) throws IOException {
+        Path file = workspace.resolve(relative);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> paths(SearchResult result) {
+        List<String> paths = new ArrayList<>();
+        for (SearchHit hit : result.getHits()) paths.add(hit.getPath());
+        return paths;
+    }
+}